@@ -243,6 +243,32 @@ public class Axis extends AbstractDescribableImpl<Axis> implements Comparable<Ax
         return getValues();
     }
 
+    /**
+     * Returns a copy of this axis for a {@link MatrixBuild} to keep, which does not change when the project
+     * gets reconfigured or rebuilt by later builds.
+     *
+     * <p>
+     * Values of axes that do not override {@link #rebuild(MatrixBuildExecution)} only change when the project
+     * is reconfigured, which replaces the axes altogether, so such axes return themselves. Other axes are
+     * deep copied. Subclasses that know how to copy themselves more cheaply can override this method.
+     *
+     * @return
+     *      Never null. An axis of the same type, with the same name and values.
+     */
+    public Axis snapshot() {
+        if (!isDynamic(getClass())) {
+            return this;
+        }
+        return (Axis) Jenkins.XSTREAM.fromXML(Jenkins.XSTREAM.toXML(this));
+    }
+
+    /**
+     * Checks if the given type of axis changes its values in {@link #rebuild(MatrixBuildExecution)}.
+     */
+    /*package*/ static boolean isDynamic(Class<? extends Axis> type) {
+        return Util.isOverridden(Axis.class, type, "rebuild", MatrixBuildExecution.class);
+    }
+
     @Override
     public AxisDescriptor getDescriptor() {
         return (AxisDescriptor)super.getDescriptor();
@@ -71,6 +71,83 @@ public class AxisList extends ArrayList<Axis> {
         return axis!=null && super.add(axis);
     }
 
+    /**
+     * Creates a copy of this list that is not affected by later changes to this list or its axes.
+     *
+     * @see Axis#snapshot()
+     */
+    public AxisList snapshot() {
+        AxisList r = new AxisList();
+        r.ensureCapacity(size());
+        for (Axis a : this)
+            r.add(a.snapshot());
+        return r;
+    }
+
+    /**
+     * Names of the axes that share some of their values with another axis, so that the value alone does not tell
+     * which axis it is for.
+     *
+     * <p>
+     * The result is computed once and reused until the axes change, so that its identity can be used as a cache key.
+     *
+     * @see Combination#toCompactString(AxisList)
+     */
+    /*package*/ Set<String> getNonUniqueAxes() {
+        NonUniqueAxes n = nonUniqueAxes;
+        if (n == null || !n.isUpToDate(this)) {
+            nonUniqueAxes = n = new NonUniqueAxes(this);
+        }
+        return n.names;
+    }
+
+    private transient volatile NonUniqueAxes nonUniqueAxes;
+
+    private static final class NonUniqueAxes {
+        /**
+         * Axes the table was computed from.
+         */
+        private final Axis[] axes;
+        /**
+         * Values of the axes that can change them on {@link Axis#rebuild}, or null for the others.
+         */
+        private final List<String>[] dynamicValues;
+        final Set<String> names;
+
+        @SuppressWarnings("unchecked")
+        NonUniqueAxes(AxisList list) {
+            axes = list.toArray(new Axis[0]);
+            dynamicValues = new List[axes.length];
+
+            Set<String> names = new HashSet<String>();
+            Map<String,Axis> axisByValue = new HashMap<String,Axis>();
+            for (int i = 0; i < axes.length; i++) {
+                Axis a = axes[i];
+                if (Axis.isDynamic(a.getClass()))
+                    dynamicValues[i] = new ArrayList<String>(a.getValues());
+                for (String v : a.getValues()) {
+                    Axis old = axisByValue.put(v,a);
+                    if(old!=null) {
+                        // these two axes have colliding values
+                        names.add(old.getName());
+                        names.add(a.getName());
+                    }
+                }
+            }
+            this.names = Collections.unmodifiableSet(names);
+        }
+
+        boolean isUpToDate(AxisList list) {
+            if (list.size() != axes.length) return false;
+            for (int i = 0; i < axes.length; i++) {
+                Axis a = list.get(i);
+                if (a != axes[i]) return false;
+                if (dynamicValues[i] != null && !dynamicValues[i].equals(a.getValues())) return false;
+            }
+            return true;
+        }
+    }
+
     /**
      * List up all the possible combinations of this list.
      */
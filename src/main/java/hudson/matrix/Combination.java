@@ -23,6 +23,8 @@
  */
 package hudson.matrix;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import groovy.lang.Binding;
 import hudson.Util;
 
@@ -31,13 +33,16 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.StringTokenizer;
 import java.util.TreeMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * A particular combination of {@link Axis} values.
@@ -49,9 +54,37 @@ import java.util.TreeMap;
  */
 public final class Combination extends TreeMap<String,String> implements Comparable<Combination> {
 
+    /**
+     * Axis names and values, in the order of the map, so that the frequent operations
+     * ({@link #get(Axis)}, {@link #compareTo(Combination)}, {@link #equals(Object)} and {@link #hashCode()})
+     * don't need to walk the tree.
+     *
+     * <p>
+     * The strings are interned, so that the many combinations of a matrix share them.
+     */
+    private transient /*final*/ String[] names, vals;
+    private transient /*final*/ int hash;
+
+    /**
+     * Read-only view of the map, backing the collection and sub-map views handed out,
+     * as writing through them would leave the fields above stale.
+     */
+    private transient /*final*/ NavigableMap<String,String> view;
+
+    /**
+     * Memoized {@link #toString()} and {@link #digest()}.
+     */
+    private transient volatile String string, digest;
+
+    /**
+     * Memoized {@link #toCompactString(AxisList)}.
+     */
+    private transient volatile CompactString compactString;
+
     public Combination(AxisList axisList, List<String> values) {
         for(int i=0; i<axisList.size(); i++)
-            super.put(axisList.get(i).getName(),values.get(i));
+            super.put(intern(axisList.get(i).getName()),intern(values.get(i)));
+        compact();
     }
 
     public Combination(AxisList axisList,String... values) {
@@ -60,11 +93,43 @@ public final class Combination extends TreeMap<String,String> implements Compara
 
     public Combination(Map<String,String> keyValuePairs) {
         for (Map.Entry<String, String> e : keyValuePairs.entrySet())
-            super.put(e.getKey(),e.getValue());
+            super.put(intern(e.getKey()),intern(e.getValue()));
+        compact();
+    }
+
+    /**
+     * Fills {@link #names}, {@link #vals} and {@link #hash} from the map.
+     */
+    private void compact() {
+        int n = super.size();
+        String[] names = new String[n], vals = new String[n];
+        int i = 0, hash = 0;
+        for (Map.Entry<String,String> e : super.entrySet()) {
+            names[i] = e.getKey();
+            vals[i] = e.getValue();
+            hash += e.hashCode();
+            i++;
+        }
+        this.names = names;
+        this.vals = vals;
+        this.hash = hash;
+        // the views of TreeMap itself, as ours are read-only
+        this.view = Collections.unmodifiableNavigableMap(super.descendingMap().descendingMap());
+    }
+
+    private Object readResolve() {
+        compact(); // the transient fields back entrySet()
+        return new Combination(this);
     }
 
     public String get(Axis a) {
-        return get(a.getName());
+        String name = a.getName();
+        // there are only a handful of axes, so this beats a tree lookup
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] == name || names[i].equals(name))
+                return vals[i];
+        }
+        return null;
     }
 
     /**
@@ -103,23 +168,36 @@ public final class Combination extends TreeMap<String,String> implements Compara
     }
 
     public int compareTo(Combination that) {
-        int d = this.size()-that.size();
+        int d = this.names.length-that.names.length;
         if(d!=0)    return d;
 
-        Iterator<Map.Entry<String,String>> itr = this.entrySet().iterator();
-        Iterator<Map.Entry<String,String>> jtr = that.entrySet().iterator();
-        while(itr.hasNext()) {
-            Map.Entry<String,String> i = itr.next();
-            Map.Entry<String,String> j = jtr.next();
-
-            d = i.getKey().compareTo(j.getKey());
+        for (int i = 0; i < names.length; i++) {
+            d = this.names[i].compareTo(that.names[i]);
             if(d!=0)    return d;
-            d = i.getValue().compareTo(j.getValue());
+            d = this.vals[i].compareTo(that.vals[i]);
             if(d!=0)    return d;
         }
         return 0;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if (o instanceof Combination) {
+            Combination that = (Combination) o;
+            return this.hash == that.hash && Arrays.equals(this.names, that.names) && Arrays.equals(this.vals, that.vals);
+        }
+        return super.equals(o);
+    }
+
+    /**
+     * Same as {@link Map#hashCode()}, computed once.
+     */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
     /**
      * Works like {@link #toString()} but only include the given axes.
      */
@@ -156,6 +234,12 @@ public final class Combination extends TreeMap<String,String> implements Compara
      *      The separator between axis name and value.
      */
     public String toString(char sep1, char sep2) {
+        if (sep1 == ',' && sep2 == '=')
+            return toString();
+        return format(sep1, sep2);
+    }
+
+    private String format(char sep1, char sep2) {
         StringBuilder buf = new StringBuilder();
         for (Map.Entry<String,String> e : entrySet()) {
             if(buf.length()>0) buf.append(sep1);
@@ -167,14 +251,20 @@ public final class Combination extends TreeMap<String,String> implements Compara
 
     @Override
     public String toString() {
-        return toString(',','=');
+        String s = string;
+        if (s == null)
+            string = s = format(',','=');
+        return s;
     }
 
     /**
      * Gets the 8 character-wide hash code for this combination
      */
     public String digest() {
-        return Util.getDigestOf(toString());
+        String d = digest;
+        if (d == null)
+            digest = d = Util.getDigestOf(toString());
+        return d;
     }
 
     /**
@@ -204,29 +294,43 @@ public final class Combination extends TreeMap<String,String> implements Compara
      * are unique, and omit the axis name.
      */
     public String toCompactString(AxisList axes) {
-        Set<String> nonUniqueAxes = new HashSet<String>();
-        Map<String,Axis> axisByValue = new HashMap<String,Axis>();
-
-        for (Axis a : axes) {
-            for (String v : a.getValues()) {
-                Axis old = axisByValue.put(v,a);
-                if(old!=null) {
-                    // these two axes have colliding values
-                    nonUniqueAxes.add(old.getName());
-                    nonUniqueAxes.add(a.getName());
-                }
-            }
-        }
+        Set<String> nonUniqueAxes = axes.getNonUniqueAxes();
+
+        // the table is recomputed whenever the axes change, so its identity tells if the last result still holds
+        CompactString c = compactString;
+        if (c != null && c.nonUniqueAxes == nonUniqueAxes)
+            return c.value;
 
         StringBuilder buf = new StringBuilder();
-        for (Map.Entry<String,String> e : entrySet()) {
+        for (int i = 0; i < names.length; i++) {
             if(buf.length()>0) buf.append(',');
-            if(nonUniqueAxes.contains(e.getKey()))
-                buf.append(e.getKey()).append('=');
-            buf.append(e.getValue());
+            if(nonUniqueAxes.contains(names[i]))
+                buf.append(names[i]).append('=');
+            buf.append(vals[i]);
         }
         if(buf.length()==0) buf.append("default"); // special case to avoid 0-length name.
-        return buf.toString();
+        String value = buf.toString();
+        compactString = new CompactString(nonUniqueAxes, value);
+        return value;
+    }
+
+    private static final class CompactString {
+        final Set<String> nonUniqueAxes;
+        final String value;
+
+        CompactString(Set<String> nonUniqueAxes, String value) {
+            this.nonUniqueAxes = nonUniqueAxes;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Shares the strings of all the combinations.
+     */
+    private static final Interner<String> STRINGS = Interners.newWeakInterner();
+
+    private static String intern(String s) {
+        return s == null ? null : STRINGS.intern(s);
     }
 
     // read-only
@@ -250,4 +354,114 @@ public final class Combination extends TreeMap<String,String> implements Compara
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public Map.Entry<String,String> pollFirstEntry() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Map.Entry<String,String> pollLastEntry() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String putIfAbsent(String key, String value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String replace(String key, String value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean replace(String key, String oldValue, String newValue) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void replaceAll(BiFunction<? super String, ? super String, ? extends String> function) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String computeIfAbsent(String key, Function<? super String, ? extends String> mappingFunction) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String computeIfPresent(String key, BiFunction<? super String, ? super String, ? extends String> remappingFunction) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String compute(String key, BiFunction<? super String, ? super String, ? extends String> remappingFunction) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String merge(String key, String value, BiFunction<? super String, ? super String, ? extends String> remappingFunction) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<Map.Entry<String,String>> entrySet() {
+        return view.entrySet();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return view.keySet();
+    }
+
+    @Override
+    public NavigableSet<String> navigableKeySet() {
+        return view.navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<String> descendingKeySet() {
+        return view.descendingKeySet();
+    }
+
+    @Override
+    public Collection<String> values() {
+        return view.values();
+    }
+
+    @Override
+    public NavigableMap<String,String> descendingMap() {
+        return view.descendingMap();
+    }
+
+    @Override
+    public NavigableMap<String,String> subMap(String fromKey, boolean fromInclusive, String toKey, boolean toInclusive) {
+        return view.subMap(fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    @Override
+    public SortedMap<String,String> subMap(String fromKey, String toKey) {
+        return view.subMap(fromKey, toKey);
+    }
+
+    @Override
+    public NavigableMap<String,String> headMap(String toKey, boolean inclusive) {
+        return view.headMap(toKey, inclusive);
+    }
+
+    @Override
+    public SortedMap<String,String> headMap(String toKey) {
+        return view.headMap(toKey);
+    }
+
+    @Override
+    public NavigableMap<String,String> tailMap(String fromKey, boolean inclusive) {
+        return view.tailMap(fromKey, inclusive);
+    }
+
+    @Override
+    public SortedMap<String,String> tailMap(String fromKey) {
+        return view.tailMap(fromKey);
+    }
+
 }
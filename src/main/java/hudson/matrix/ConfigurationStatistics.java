@@ -0,0 +1,211 @@
+package hudson.matrix;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Result;
+import hudson.model.listeners.RunListener;
+import org.kohsuke.accmod.Restricted;
+import org.kohsuke.accmod.restrictions.NoExternalUse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Figures about the configurations of a {@link MatrixProject} that {@link MatrixConfigurationSorter}s look at,
+ * kept so that sorting a large matrix does not load the build records of every configuration.
+ *
+ * <p>
+ * Figures are keyed by {@link Combination} or its string form, as {@link MatrixConfiguration} instances are replaced on reload,
+ * and updated as {@link MatrixRun}s complete. The {@link Outcomes} are also saved in {@link #getFile()},
+ * once per {@link MatrixBuild}.
+ *
+ * @see MatrixProject#getConfigurationStatistics()
+ */
+final class ConfigurationStatistics {
+    private final MatrixProject project;
+
+    /**
+     * {@link MatrixConfiguration#getEstimatedDuration()} of the configurations that were asked for.
+     */
+    private final Map<Combination,Long> estimatedDurations = new ConcurrentHashMap<Combination,Long>();
+
+    /**
+     * Recent results of each combination, by {@link Combination#toString()}. Loaded on first use.
+     */
+    private volatile Map<String,Outcomes> outcomes;
+
+    /**
+     * True if {@link #outcomes} changed since it was saved.
+     */
+    private volatile boolean dirty;
+
+    ConfigurationStatistics(MatrixProject project) {
+        this.project = project;
+    }
+
+    /**
+     * Gets {@link MatrixConfiguration#getEstimatedDuration()}, computing it only if a run completed since last time.
+     *
+     * @return -1 if there is no estimate.
+     */
+    long getEstimatedDuration(MatrixConfiguration c) {
+        Long d = estimatedDurations.get(c.getCombination());
+        if (d == null) {
+            d = c.getEstimatedDuration();
+            estimatedDurations.put(c.getCombination(), d);
+        }
+        return d;
+    }
+
+    /**
+     * Gets the recent results of the given configuration.
+     *
+     * @return null if the configuration has not completed any run since these figures are kept.
+     */
+    @CheckForNull Outcomes getOutcomes(MatrixConfiguration c) {
+        return getOutcomes().get(c.getCombination().toString());
+    }
+
+    private Map<String,Outcomes> getOutcomes() {
+        Map<String,Outcomes> o = outcomes;
+        if (o == null) {
+            synchronized (this) {
+                o = outcomes;
+                if (o == null) {
+                    outcomes = o = load();
+                }
+            }
+        }
+        return o;
+    }
+
+    private Map<String,Outcomes> load() {
+        Map<String,Outcomes> o = new ConcurrentHashMap<String,Outcomes>();
+        XmlFile f = getFile();
+        if (f.exists()) {
+            try {
+                Object data = f.read();
+                if (data instanceof Map) {
+                    for (Map.Entry<?,?> e : ((Map<?,?>) data).entrySet()) {
+                        if (e.getKey() instanceof String && e.getValue() instanceof Outcomes) {
+                            o.put((String) e.getKey(), (Outcomes) e.getValue());
+                        }
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to load " + f, e);
+            }
+        }
+        return o;
+    }
+
+    /**
+     * Saves the {@link Outcomes} if they changed.
+     */
+    /*package*/ void save() {
+        if (!dirty) return;
+        dirty = false;
+        XmlFile f = getFile();
+        try {
+            f.write(new TreeMap<String,Outcomes>(getOutcomes()));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save " + f, e);
+        }
+    }
+
+    private XmlFile getFile() {
+        return new XmlFile(new File(project.getRootDir(), "configuration-statistics.xml"));
+    }
+
+    /*package*/ void onFinalized(MatrixRun r) {
+        MatrixConfiguration c = r.getParent();
+        estimatedDurations.remove(c.getCombination());
+
+        Result result = r.getResult();
+        if (result == null || result == Result.ABORTED || result == Result.NOT_BUILT) {
+            return; // says nothing about the configuration
+        }
+        String key = c.getCombination().toString();
+        getOutcomes().merge(key, Outcomes.of(result), Outcomes::add);
+        dirty = true;
+    }
+
+    /**
+     * Summary of the recent results of a configuration.
+     */
+    static final class Outcomes {
+        /**
+         * Exponential moving average of failures, where 1 is a run worse than {@link Result#SUCCESS}.
+         */
+        private final double failureRate;
+        private final Result lastResult;
+        /**
+         * Number of runs since the result last changed, 0 if the last run changed it.
+         */
+        private final int runsSinceChange;
+
+        private Outcomes(double failureRate, Result lastResult, int runsSinceChange) {
+            this.failureRate = failureRate;
+            this.lastResult = lastResult;
+            this.runsSinceChange = runsSinceChange;
+        }
+
+        static Outcomes of(Result r) {
+            return new Outcomes(isFailure(r) ? 1 : 0, r, 0);
+        }
+
+        Outcomes add(Outcomes next) {
+            double rate = failureRate + (next.failureRate - failureRate) * SMOOTHING;
+            int since = next.lastResult == lastResult ? runsSinceChange + 1 : 0;
+            return new Outcomes(rate, next.lastResult, since);
+        }
+
+        double getFailureRate() {
+            return failureRate;
+        }
+
+        Result getLastResult() {
+            return lastResult;
+        }
+
+        int getRunsSinceChange() {
+            return runsSinceChange;
+        }
+
+        private static boolean isFailure(Result r) {
+            return r.isWorseThan(Result.SUCCESS);
+        }
+
+        /**
+         * Weight of the latest run in {@link #failureRate}.
+         */
+        private static final double SMOOTHING = 0.3;
+    }
+
+    @Extension
+    @Restricted(NoExternalUse.class)
+    public static final class RunListenerImpl extends RunListener<MatrixRun> {
+        @Override
+        public void onFinalized(MatrixRun r) {
+            // by now the run counts in the estimate
+            r.getParent().getParent().getConfigurationStatistics().onFinalized(r);
+        }
+    }
+
+    @Extension
+    @Restricted(NoExternalUse.class)
+    public static final class BuildListenerImpl extends RunListener<MatrixBuild> {
+        @Override
+        public void onFinalized(MatrixBuild b) {
+            b.getParent().getConfigurationStatistics().save();
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(ConfigurationStatistics.class.getName());
+}
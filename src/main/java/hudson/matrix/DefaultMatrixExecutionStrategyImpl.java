@@ -7,14 +7,11 @@ import hudson.console.ModelHyperlinkNote;
 import hudson.matrix.MatrixBuild.MatrixBuildExecution;
 import hudson.matrix.listeners.MatrixBuildListener;
 import hudson.model.Action;
-import hudson.model.BuildListener;
 import hudson.model.Cause.UpstreamCause;
 import hudson.model.ParametersAction;
-import hudson.model.Queue;
 import hudson.model.ResourceController;
 import hudson.model.Result;
 import hudson.model.Run;
-import hudson.model.queue.CauseOfBlockage;
 
 import java.io.IOException;
 import java.io.PrintStream;
@@ -22,7 +19,10 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.TreeSet;
 import edu.umd.cs.findbugs.annotations.Nullable;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -61,6 +61,42 @@ public class DefaultMatrixExecutionStrategyImpl extends MatrixExecutionStrategy
      */
     private volatile int scheduleDelayMillis;
 
+    /**
+     * If true, {@link MatrixAggregator#endRun(MatrixRun)} is called from a background thread as soon as each
+     * {@link MatrixRun} completes, so that aggregation overlaps with the configurations that are still running.
+     */
+    private volatile boolean aggregateInBackground;
+
+    /**
+     * If true and not {@link #isRunSequentially()}, configurations are put into the queue only as fast as
+     * the executors of their labels can take them, as decided by {@link SchedulingThrottle},
+     * instead of all at once or with {@link #scheduleDelayMillis} between each.
+     */
+    private volatile boolean throttleScheduling;
+
+    /**
+     * If positive and not {@link #isRunSequentially()}, at most this many configurations of a build are
+     * scheduled or running at any time. The next one is scheduled when one completes. Zero means no limit.
+     */
+    private volatile int maxConcurrentConfigurations;
+
+    /**
+     * If positive, the configurations that are not done yet get aborted once this many configurations
+     * failed. Zero disables.
+     */
+    private volatile int failFastCount;
+
+    /**
+     * If positive, the configurations that are not done yet get aborted once this percentage of the
+     * configurations of the build failed. Zero disables.
+     */
+    private volatile int failFastPercentage;
+
+    /**
+     * If true, failing fast also interrupts the configurations that are running, not just the queued ones.
+     */
+    private volatile boolean failFastInterruptRunning;
+
     @DataBoundConstructor
     public DefaultMatrixExecutionStrategyImpl(Boolean runSequentially, boolean hasTouchStoneCombinationFilter, String touchStoneCombinationFilter, Result touchStoneResultCondition, MatrixConfigurationSorter sorter) {
         this(runSequentially!=null ? runSequentially : false,
@@ -158,6 +194,84 @@ public class DefaultMatrixExecutionStrategyImpl extends MatrixExecutionStrategy
         return scheduleDelayMillis > 0;
     }
 
+    public boolean isAggregateInBackground() {
+        return aggregateInBackground;
+    }
+
+    @DataBoundSetter
+    public void setAggregateInBackground(boolean aggregateInBackground) {
+        this.aggregateInBackground = aggregateInBackground;
+    }
+
+    public boolean isThrottleScheduling() {
+        return throttleScheduling;
+    }
+
+    @DataBoundSetter
+    public void setThrottleScheduling(boolean throttleScheduling) {
+        this.throttleScheduling = throttleScheduling;
+    }
+
+    public int getMaxConcurrentConfigurations() {
+        return maxConcurrentConfigurations;
+    }
+
+    @DataBoundSetter
+    public void setMaxConcurrentConfigurations(Integer maxConcurrentConfigurations) {
+        this.maxConcurrentConfigurations = maxConcurrentConfigurations == null ? 0 : Math.max(0, maxConcurrentConfigurations);
+    }
+
+    /**
+     * Optional fail-fast settings follow the same pattern as {@link #setHasScheduleDelayBetweenChildBuilds(boolean)}.
+     */
+    @DataBoundSetter
+    public void setHasFailFast(boolean has) {
+        if (!has) {
+            failFastCount = 0;
+            failFastPercentage = 0;
+            failFastInterruptRunning = false;
+        }
+    }
+
+    public boolean getHasFailFast() {
+        return failFastCount > 0 || failFastPercentage > 0;
+    }
+
+    public int getFailFastCount() {
+        return failFastCount;
+    }
+
+    @DataBoundSetter
+    public void setFailFastCount(Integer failFastCount) {
+        this.failFastCount = failFastCount == null ? 0 : Math.max(0, failFastCount);
+    }
+
+    public int getFailFastPercentage() {
+        return failFastPercentage;
+    }
+
+    @DataBoundSetter
+    public void setFailFastPercentage(Integer failFastPercentage) {
+        this.failFastPercentage = failFastPercentage == null ? 0 : Math.max(0, Math.min(100, failFastPercentage));
+    }
+
+    public boolean isFailFastInterruptRunning() {
+        return failFastInterruptRunning;
+    }
+
+    @DataBoundSetter
+    public void setFailFastInterruptRunning(boolean failFastInterruptRunning) {
+        this.failFastInterruptRunning = failFastInterruptRunning;
+    }
+
+    /**
+     * Checks if the configurations are scheduled one by one as the build progresses,
+     * rather than all upfront.
+     */
+    private boolean isScheduledProgressively() {
+        return runSequentially || throttleScheduling || maxConcurrentConfigurations > 0;
+    }
+
     @Override
     public Result run(MatrixBuildExecution execution) throws InterruptedException, IOException {
 
@@ -173,48 +287,142 @@ public class DefaultMatrixExecutionStrategyImpl extends MatrixExecutionStrategy
         if (notifyStartBuild(execution.getAggregators())) return Result.FAILURE;
 
         if (sorter != null) {
-            touchStoneConfigurations = createTreeSet(touchStoneConfigurations, sorter);
-            delayedConfigurations    = createTreeSet(delayedConfigurations, sorter);
+            touchStoneConfigurations = createTreeSet(touchStoneConfigurations, sorter.snapshot(touchStoneConfigurations));
+            delayedConfigurations    = createTreeSet(delayedConfigurations, sorter.snapshot(delayedConfigurations));
         }
 
-        boolean parallelEnqueueStarted = false;
-        if (!runSequentially) {
-            parallelEnqueueStarted = scheduleConfigurationsInParallel(execution, touchStoneConfigurations, parallelEnqueueStarted);
+        MatrixRunTracker tracker = execution.getRunTracker();
+        final boolean ownTracker = tracker == null; // execution that was not started by MatrixBuild
+        if (ownTracker) {
+            tracker = MatrixRunTracker.open(execution.getBuild(), execution.getListener());
         }
+        MatrixAggregationQueue aggregation = new MatrixAggregationQueue(execution.getBuild(), execution.getAggregators(), aggregateInBackground);
+        SchedulingThrottle throttle = throttleScheduling && !runSequentially ? new SchedulingThrottle(tracker) : null;
+        FailFast failFast = getHasFailFast() ? new FailFast(touchStoneConfigurations.size() + delayedConfigurations.size()) : null;
+        try {
+            boolean parallelEnqueueStarted = false;
+            if (!isScheduledProgressively()) {
+                parallelEnqueueStarted = scheduleConfigurationsInParallel(execution, tracker, touchStoneConfigurations, parallelEnqueueStarted);
+            }
 
-        PrintStream logger = execution.getListener().getLogger();
+            Result r = buildConfigurations(execution, tracker, aggregation, throttle, failFast, touchStoneConfigurations);
 
-        Result r = Result.SUCCESS;
-        for (MatrixConfiguration c : touchStoneConfigurations) {
-            if(runSequentially)
-                scheduleConfigurationBuild(execution, c);
-            MatrixRun run = waitForCompletion(execution, c);
-            notifyEndBuild(run,execution.getAggregators());
-            logger.println(Messages.MatrixBuild_Completed(ModelHyperlinkNote.encodeTo(c), getResult(run)));
-            r = r.combine(getResult(run));
-        }
+            if (touchStoneResultCondition != null && r.isWorseThan(touchStoneResultCondition)) {
+                execution.getListener().getLogger().printf("Touchstone configurations resulted in %s, so aborting...%n", r);
+            } else if (failFast == null || !failFast.triggered) {
+                if (!isScheduledProgressively()) {
+                    scheduleConfigurationsInParallel(execution, tracker, delayedConfigurations, parallelEnqueueStarted);
+                }
+
+                r = r.combine(buildConfigurations(execution, tracker, aggregation, throttle, failFast, delayedConfigurations));
+            }
 
-        if (touchStoneResultCondition != null && r.isWorseThan(touchStoneResultCondition)) {
-            logger.printf("Touchstone configurations resulted in %s, so aborting...%n", r);
+            // MatrixAggregator.endBuild expects every run to have been seen
+            aggregation.drain();
             return r;
+        } finally {
+            aggregation.close();
+            if (ownTracker) {
+                tracker.close();
+            }
         }
+    }
 
-        if (!runSequentially) {
-            scheduleConfigurationsInParallel(execution, delayedConfigurations, parallelEnqueueStarted);
+    /**
+     * Waits for the given configurations to complete, and reports each of them to the aggregators
+     * in the order they complete. When {@link #isRunSequentially()}, the configurations are also
+     * scheduled here, one after the other. So they are when throttled, as capacity allows,
+     * or when limited by {@link #getMaxConcurrentConfigurations()}, as others complete.
+     *
+     * @param aggregation   notifies the aggregators
+     * @param throttle      if non-null, decides when to schedule the configurations
+     * @param failFast      if non-null, counts the failures, and aborts the remaining configurations past the threshold
+     * @return combined result of the configurations
+     */
+    private Result buildConfigurations(MatrixBuildExecution execution, MatrixRunTracker tracker, MatrixAggregationQueue aggregation, @Nullable SchedulingThrottle throttle, @Nullable FailFast failFast, Collection<MatrixConfiguration> configurations) throws InterruptedException, IOException {
+        PrintStream logger = execution.getListener().getLogger();
+
+        List<MatrixConfiguration> unscheduled = new LinkedList<MatrixConfiguration>();
+        Set<MatrixConfiguration> pending = new HashSet<MatrixConfiguration>();
+        int limit = runSequentially ? 1 : maxConcurrentConfigurations;
+        if (isScheduledProgressively()) {
+            unscheduled.addAll(configurations);
+        } else {
+            // already scheduled by scheduleConfigurationsInParallel
+            pending.addAll(configurations);
         }
 
-        for (MatrixConfiguration c : delayedConfigurations) {
-            if(runSequentially)
-                scheduleConfigurationBuild(execution, c);
-            MatrixRun run = waitForCompletion(execution, c);
-            notifyEndBuild(run,execution.getAggregators());
-            logger.println(Messages.MatrixBuild_Completed(ModelHyperlinkNote.encodeTo(c), getResult(run)));
+        Result r = Result.SUCCESS;
+        while (true) {
+            if (throttle != null) {
+                throttle.reset(pending);
+            }
+            // when throttled, keep the order of the sorter within each label, but let other labels go ahead of a busy one
+            for (Iterator<MatrixConfiguration> itr = unscheduled.iterator(); itr.hasNext(); ) {
+                if (limit > 0 && pending.size() >= limit) break;
+                MatrixConfiguration c = itr.next();
+                if (throttle == null || throttle.tryAcquire(c)) {
+                    itr.remove();
+                    scheduleConfigurationBuild(execution, tracker, c);
+                    pending.add(c);
+                }
+            }
+            if (pending.isEmpty()) break;
+
+            MatrixRunTracker.Completion done;
+            if (throttle != null) {
+                // look at the capacity again as soon as one of ours leaves the queue, or once in a while
+                done = tracker.awaitCompletionOrStart(pending, SchedulingThrottle.INTERVAL);
+                if (done == null) continue;
+            } else {
+                done = tracker.awaitCompletion(pending);
+            }
+            pending.remove(done.configuration);
+
+            MatrixRun run = done.run;
+            aggregation.submit(run);
+            logger.println(Messages.MatrixBuild_Completed(ModelHyperlinkNote.encodeTo(done.configuration), getResult(run)));
             r = r.combine(getResult(run));
-        }
 
+            if (failFast != null && failFast.record(getResult(run))) {
+                logger.printf("%d configurations failed, so aborting the rest...%n", failFast.failures);
+                unscheduled.clear();
+                // the cancelled and interrupted ones still complete through the tracker
+                execution.cancelConfigurations(failFastInterruptRunning);
+            }
+        }
         return r;
     }
 
+    /**
+     * Counts the failed configurations of a build against the fail-fast thresholds.
+     */
+    private final class FailFast {
+        /**
+         * Number of configurations in the build.
+         */
+        private final int total;
+        private int failures;
+        private boolean triggered;
+
+        FailFast(int total) {
+            this.total = total;
+        }
+
+        /**
+         * @return true if this failure reaches a threshold, and the rest of the build should be aborted.
+         */
+        boolean record(Result r) {
+            if (triggered || r != Result.FAILURE) {
+                return false;
+            }
+            failures++;
+            triggered = (failFastCount > 0 && failures >= failFastCount)
+                    || (failFastPercentage > 0 && failures * 100L >= (long) failFastPercentage * total);
+            return triggered;
+        }
+    }
+
     private void filterConfigurations(
             final MatrixBuildExecution execution,
             final Collection<MatrixConfiguration> touchStoneConfigurations,
@@ -261,13 +469,6 @@ public class DefaultMatrixExecutionStrategyImpl extends MatrixExecutionStrategy
         return false;
     }
 
-    private void notifyEndBuild(MatrixRun b, List<MatrixAggregator> aggregators) throws InterruptedException, IOException {
-        if (b==null)    return; // can happen if the configuration run gets cancelled before it gets started.
-        for (MatrixAggregator a : aggregators)
-            if(!a.endRun(b))
-                throw new AbortException();
-    }
-
     private <T> TreeSet<T> createTreeSet(Collection<T> items, Comparator<T> sorter) {
         TreeSet<T> r = new TreeSet<T>(sorter);
         r.addAll(items);
@@ -276,19 +477,35 @@ public class DefaultMatrixExecutionStrategyImpl extends MatrixExecutionStrategy
 
     /**
      * Enqueue configurations for parallel mode, optionally pausing between each {@link #scheduleConfigurationBuild}.
+     * Without a pause, all the configurations are enqueued at once.
      *
      * @param afterPrevious {@code true} if at least one configuration was already enqueued in this matrix build
      * @return {@code true} once any configuration from {@code configurations} was enqueued
      */
     private boolean scheduleConfigurationsInParallel(
             MatrixBuildExecution execution,
-            Iterable<MatrixConfiguration> configurations,
+            MatrixRunTracker tracker,
+            Collection<MatrixConfiguration> configurations,
             boolean afterPrevious) throws InterruptedException {
+        if (scheduleDelayMillis <= 0) {
+            if (configurations.isEmpty()) {
+                return afterPrevious;
+            }
+            MatrixBuild build = execution.getBuild();
+            PrintStream logger = execution.getListener().getLogger();
+            for (MatrixConfiguration c : configurations) {
+                logger.println(Messages.MatrixBuild_Triggering(ModelHyperlinkNote.encodeTo(c)));
+                tracker.expect(c);
+            }
+            execution.getProject().scheduleConfigurations(configurations, getChildActions(build), new UpstreamCause((Run)build));
+            return true;
+        }
+
         for (MatrixConfiguration c : configurations) {
-            if (afterPrevious && scheduleDelayMillis > 0) {
+            if (afterPrevious) {
                 Thread.sleep(scheduleDelayMillis);
             }
-            scheduleConfigurationBuild(execution, c);
+            scheduleConfigurationBuild(execution, tracker, c);
             afterPrevious = true;
         }
         return afterPrevious;
@@ -300,69 +517,24 @@ public class DefaultMatrixExecutionStrategyImpl extends MatrixExecutionStrategy
      * that are present in the parent build.
      *
      * @param exec  Matrix build that is the parent of the configuration
+     * @param tracker   Tracker that will report the completion of the configuration
      * @param c     Configuration to schedule
      */
-    private void scheduleConfigurationBuild(MatrixBuildExecution exec, MatrixConfiguration c) {
+    private void scheduleConfigurationBuild(MatrixBuildExecution exec, MatrixRunTracker tracker, MatrixConfiguration c) {
         MatrixBuild build = exec.getBuild();
         exec.getListener().getLogger().println(Messages.MatrixBuild_Triggering(ModelHyperlinkNote.encodeTo(c)));
 
-        // filter the parent actions for those that can be passed to the individual jobs.
-        List<Action> childActions = new ArrayList<Action>(build.getActions(MatrixChildAction.class));
-        childActions.addAll(build.getActions(ParametersAction.class)); // used to implement MatrixChildAction
-        c.scheduleBuild(childActions, new UpstreamCause((Run)build));
+        tracker.expect(c);
+        c.scheduleBuild(getChildActions(build), new UpstreamCause((Run)build));
     }
 
-    private MatrixRun waitForCompletion(MatrixBuildExecution exec, MatrixConfiguration c) throws InterruptedException, IOException {
-        BuildListener listener = exec.getListener();
-        String whyInQueue = "";
-        long startTime = System.currentTimeMillis();
-
-        // wait for the completion
-        int appearsCancelledCount = 0;
-        while(true) {
-            MatrixRun b = c.getBuildByNumber(exec.getBuild().getNumber());
-
-            // two ways to get beyond this. one is that the build starts and gets done,
-            // or the build gets cancelled before it even started.
-            if(b!=null && !b.isBuilding()) {
-                Result buildResult = b.getResult();
-                if(buildResult!=null)
-                    return b;
-            }
-            Queue.Item qi = c.getQueueItem();
-            if(b==null && qi==null)
-                appearsCancelledCount++;
-            else
-                appearsCancelledCount = 0;
-
-            if(appearsCancelledCount>=5) {
-                // there's conceivably a race condition in computating b and qi, as their computation
-                // are not synchronized. There are indeed several reports of Hudson incorrectly assuming
-                // builds being cancelled. See
-                // http://www.nabble.com/Master-slave-problem-tt14710987.html and also
-                // http://www.nabble.com/Anyone-using-AccuRev-plugin--tt21634577.html#a21671389
-                // because of this, we really make sure that the build is cancelled by doing this 5
-                // times over 5 seconds
-                listener.getLogger().println(Messages.MatrixBuild_AppearsCancelled(ModelHyperlinkNote.encodeTo(c)));
-                return null;
-            }
-
-            if(qi!=null) {
-                // if the build seems to be stuck in the queue, display why
-                String why = qi.getWhy();
-                if(why != null && !why.equals(whyInQueue) && System.currentTimeMillis()-startTime>5000) {
-                    // fix race condition and prevent NPE when resource gets out of the queue between getWhy() and causeOfBlockage()
-                    CauseOfBlockage cause = qi.getCauseOfBlockage();
-                    if (cause != null) {
-                        listener.getLogger().print("Configuration " + ModelHyperlinkNote.encodeTo(c)+" is still in the queue: ");
-                        cause.print(listener); //this is still shown on the same line
-                        whyInQueue = why;
-                    }
-                }
-            }
-
-            Thread.sleep(1000);
-        }
+    /**
+     * Filters the parent actions for those that can be passed to the individual jobs.
+     */
+    private List<Action> getChildActions(MatrixBuild build) {
+        List<Action> childActions = new ArrayList<Action>(build.getActions(MatrixChildAction.class));
+        childActions.addAll(build.getActions(ParametersAction.class)); // used to implement MatrixChildAction
+        return childActions;
     }
 
     @Extension
@@ -0,0 +1,83 @@
+package hudson.matrix;
+
+import hudson.Extension;
+import hudson.util.FormValidation;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * {@link MatrixConfigurationSorter} that starts the configurations expected to take the longest first,
+ * so that a long configuration does not start last and stretch the whole build.
+ *
+ * <p>
+ * Configurations without an estimate, such as new ones, come first, as they could be long too.
+ * The estimates are {@linkplain ConfigurationStatistics cached} per project, in memory only, so the first sort
+ * after a restart still loads the recent builds of every configuration.
+ */
+public class DurationMatrixConfigurationSorter extends MatrixConfigurationSorter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @DataBoundConstructor
+    public DurationMatrixConfigurationSorter() {
+    }
+
+    @Override
+    public void validate(MatrixProject p) throws FormValidation {
+        // nothing
+    }
+
+    public int compare(MatrixConfiguration o1, MatrixConfiguration o2) {
+        return compare(o1, estimate(o1), o2, estimate(o2));
+    }
+
+    /**
+     * Compares the estimates read before sorting, as they change when runs complete.
+     */
+    @Override
+    public Comparator<MatrixConfiguration> snapshot(Collection<MatrixConfiguration> configurations) {
+        final Map<MatrixConfiguration,Long> estimates = new HashMap<MatrixConfiguration,Long>();
+        for (MatrixConfiguration c : configurations) {
+            estimates.put(c, estimate(c));
+        }
+        return new Comparator<MatrixConfiguration>() {
+            public int compare(MatrixConfiguration o1, MatrixConfiguration o2) {
+                return DurationMatrixConfigurationSorter.compare(o1, get(o1), o2, get(o2));
+            }
+
+            private long get(MatrixConfiguration c) {
+                Long d = estimates.get(c);
+                if (d == null) {
+                    // not one of the sorted configurations, read once as well
+                    d = estimate(c);
+                    estimates.put(c, d);
+                }
+                return d;
+            }
+        };
+    }
+
+    private static int compare(MatrixConfiguration o1, long d1, MatrixConfiguration o2, long d2) {
+        if (d1 != d2) {
+            return d1 > d2 ? -1 : 1;
+        }
+        return o1.getDisplayName().compareTo(o2.getDisplayName());
+    }
+
+    private static long estimate(MatrixConfiguration c) {
+        long d = c.getParent().getConfigurationStatistics().getEstimatedDuration(c);
+        return d < 0 ? Long.MAX_VALUE : d;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends MatrixConfigurationSorterDescriptor {
+        @Override
+        public String getDisplayName() {
+            return "Longest estimated duration first";
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package hudson.matrix;
+
+import hudson.Extension;
+import hudson.util.FormValidation;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * {@link MatrixConfigurationSorter} that starts the configurations most likely to fail first,
+ * so that a broken build is known as early as possible.
+ *
+ * <p>
+ * The likelihood is the recent failure rate of the configuration, raised when its result changed lately,
+ * as a configuration that just started failing (or just got fixed) is the one worth hearing about first.
+ * Configurations with no recorded run count as a coin flip. The figures come from
+ * {@link ConfigurationStatistics}, so no build record gets loaded.
+ */
+public class FailureRateMatrixConfigurationSorter extends MatrixConfigurationSorter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @DataBoundConstructor
+    public FailureRateMatrixConfigurationSorter() {
+    }
+
+    @Override
+    public void validate(MatrixProject p) throws FormValidation {
+        // nothing
+    }
+
+    public int compare(MatrixConfiguration o1, MatrixConfiguration o2) {
+        return compare(o1, score(o1), o2, score(o2));
+    }
+
+    /**
+     * Compares the scores computed before sorting, as they change when runs complete.
+     */
+    @Override
+    public Comparator<MatrixConfiguration> snapshot(Collection<MatrixConfiguration> configurations) {
+        final Map<MatrixConfiguration,Double> scores = new HashMap<MatrixConfiguration,Double>();
+        for (MatrixConfiguration c : configurations) {
+            scores.put(c, score(c));
+        }
+        return new Comparator<MatrixConfiguration>() {
+            public int compare(MatrixConfiguration o1, MatrixConfiguration o2) {
+                return FailureRateMatrixConfigurationSorter.compare(o1, get(o1), o2, get(o2));
+            }
+
+            private double get(MatrixConfiguration c) {
+                Double s = scores.get(c);
+                if (s == null) {
+                    // not one of the sorted configurations, compute once as well
+                    s = score(c);
+                    scores.put(c, s);
+                }
+                return s;
+            }
+        };
+    }
+
+    private static int compare(MatrixConfiguration o1, double s1, MatrixConfiguration o2, double s2) {
+        int r = Double.compare(s2, s1);
+        if (r != 0) {
+            return r;
+        }
+        return o1.getDisplayName().compareTo(o2.getDisplayName());
+    }
+
+    /*package*/ static double score(MatrixConfiguration c) {
+        ConfigurationStatistics.Outcomes o = c.getParent().getConfigurationStatistics().getOutcomes(c);
+        if (o == null) {
+            return 0.5;
+        }
+        return o.getFailureRate() + 0.5 / (1 + o.getRunsSinceChange());
+    }
+
+    @Extension
+    public static class DescriptorImpl extends MatrixConfigurationSorterDescriptor {
+        @Override
+        public String getDisplayName() {
+            return "Most likely to fail first";
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package hudson.matrix;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Evaluates simple combination filters without going through Groovy.
+ *
+ * <p>
+ * Most filters only look at the axis values, like {@code jdk=="8" && index%2==0}. This class understands
+ * that subset of Groovy: variables, string and integer literals, {@code true}, {@code false}, {@code null},
+ * {@code ==}, {@code !=}, {@code &&}, {@code ||}, {@code !}, {@code %}, parentheses and {@code String.contains(...)}.
+ *
+ * <p>
+ * Anything else, whether found while parsing or while evaluating (such as an unknown variable or
+ * comparing a string to a number), is reported as unsupported, so that the caller can fall back to the
+ * Groovy sandbox to get the authoritative result or error.
+ *
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ */
+final class FilterExpression {
+    /**
+     * Returned by {@link #evaluate(Map)} when the expression needs to be evaluated by Groovy instead.
+     */
+    static final Object UNSUPPORTED = new Object();
+
+    private final Node root;
+
+    private FilterExpression(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * @return null if the expression is not in the supported subset.
+     */
+    static @CheckForNull FilterExpression parse(String text) {
+        try {
+            Parser p = new Parser(text);
+            Node root = p.parseOr();
+            if (p.peek() != Parser.EOF) throw Unsupported.INSTANCE;
+            return new FilterExpression(root);
+        } catch (Unsupported e) {
+            return null;
+        }
+    }
+
+    /**
+     * Evaluates the expression.
+     *
+     * @param variables
+     *      Variables the expression can see, like the {@link groovy.lang.Binding} of the Groovy script would.
+     * @return the value Groovy would have returned, or {@link #UNSUPPORTED}.
+     */
+    Object evaluate(Map<?,?> variables) {
+        try {
+            return root.eval(variables);
+        } catch (Unsupported e) {
+            return UNSUPPORTED;
+        }
+    }
+
+    private interface Node {
+        Object eval(Map<?,?> variables) throws Unsupported;
+    }
+
+    /**
+     * Thrown when the expression is outside the supported subset.
+     */
+    private static final class Unsupported extends Exception {
+        static final Unsupported INSTANCE = new Unsupported();
+
+        private Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Groovy truth of the supported values.
+     */
+    private static boolean truth(Object v) throws Unsupported {
+        if (v == null) return false;
+        if (v instanceof Boolean) return (Boolean) v;
+        if (v instanceof String) return !((String) v).isEmpty();
+        if (v instanceof Integer || v instanceof Long) return ((Number) v).longValue() != 0;
+        throw Unsupported.INSTANCE;
+    }
+
+    /**
+     * Groovy {@code ==} on the supported values.
+     */
+    private static boolean equal(Object l, Object r) throws Unsupported {
+        if (l == null || r == null) return l == r;
+        if (isInteger(l) && isInteger(r)) return ((Number) l).longValue() == ((Number) r).longValue();
+        if (l instanceof String && r instanceof String || l instanceof Boolean && r instanceof Boolean) return l.equals(r);
+        throw Unsupported.INSTANCE;
+    }
+
+    private static boolean isInteger(Object v) {
+        return v instanceof Integer || v instanceof Long;
+    }
+
+    private static final class Parser {
+        static final int EOF = -1;
+
+        private final String text;
+        private int pos;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        /**
+         * Next significant character, without consuming it.
+         */
+        int peek() {
+            while (pos < text.length()) {
+                char ch = text.charAt(pos);
+                if (ch != ' ' && ch != '\t') return ch;
+                pos++;
+            }
+            return EOF;
+        }
+
+        private boolean consume(String token) {
+            peek();
+            if (text.startsWith(token, pos)) {
+                pos += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String token) throws Unsupported {
+            if (!consume(token)) throw Unsupported.INSTANCE;
+        }
+
+        Node parseOr() throws Unsupported {
+            Node l = parseAnd();
+            while (consume("||")) {
+                final Node left = l, right = parseAnd();
+                l = v -> truth(left.eval(v)) || truth(right.eval(v));
+            }
+            return l;
+        }
+
+        private Node parseAnd() throws Unsupported {
+            Node l = parseEquality();
+            while (consume("&&")) {
+                final Node left = l, right = parseEquality();
+                l = v -> truth(left.eval(v)) && truth(right.eval(v));
+            }
+            return l;
+        }
+
+        private Node parseEquality() throws Unsupported {
+            final Node left = parseModulo();
+            final boolean negated;
+            if (consume("==")) {
+                negated = false;
+            } else if (consume("!=")) {
+                negated = true;
+            } else {
+                return left;
+            }
+            // identity (===, !==) or chained comparisons are left to Groovy
+            if (peek() == '=') throw Unsupported.INSTANCE;
+            final Node right = parseModulo();
+            if (text.startsWith("==", pos) || text.startsWith("!=", pos)) throw Unsupported.INSTANCE;
+            return v -> equal(left.eval(v), right.eval(v)) != negated;
+        }
+
+        private Node parseModulo() throws Unsupported {
+            Node l = parseUnary();
+            while (peek() == '%') {
+                pos++;
+                if (peek() == '=') throw Unsupported.INSTANCE; // %=
+                final Node left = l, right = parseUnary();
+                l = v -> {
+                    Object a = left.eval(v), b = right.eval(v);
+                    if (!isInteger(a) || !isInteger(b) || ((Number) b).longValue() == 0) throw Unsupported.INSTANCE;
+                    if (a instanceof Integer && b instanceof Integer) return (Integer) a % (Integer) b;
+                    return ((Number) a).longValue() % ((Number) b).longValue();
+                };
+            }
+            return l;
+        }
+
+        private Node parseUnary() throws Unsupported {
+            if (peek() == '!' && !text.startsWith("!=", pos)) {
+                pos++;
+                final Node operand = parseUnary();
+                return v -> !truth(operand.eval(v));
+            }
+            return parsePostfix();
+        }
+
+        private Node parsePostfix() throws Unsupported {
+            Node n = parsePrimary();
+            while (peek() == '.') {
+                pos++;
+                expect("contains");
+                expect("(");
+                final Node receiver = n, arg = parseOr();
+                expect(")");
+                n = v -> {
+                    Object r = receiver.eval(v), a = arg.eval(v);
+                    if (!(r instanceof String) || !(a instanceof String)) throw Unsupported.INSTANCE;
+                    return ((String) r).contains((String) a);
+                };
+            }
+            return n;
+        }
+
+        private Node parsePrimary() throws Unsupported {
+            int ch = peek();
+            if (ch == '(') {
+                pos++;
+                Node n = parseOr();
+                expect(")");
+                return n;
+            }
+            if (ch == '\'' || ch == '"') {
+                return parseString((char) ch);
+            }
+            if (ch >= '0' && ch <= '9') {
+                return parseNumber();
+            }
+            if (Character.isLetter(ch) || ch == '_') {
+                return parseIdentifier();
+            }
+            throw Unsupported.INSTANCE;
+        }
+
+        private Node parseString(char quote) throws Unsupported {
+            if (text.startsWith("" + quote + quote + quote, pos)) throw Unsupported.INSTANCE; // multi-line string
+            int end = text.indexOf(quote, pos + 1);
+            if (end < 0) throw Unsupported.INSTANCE;
+            final String value = text.substring(pos + 1, end);
+            // escapes, and interpolation in GStrings, are left to Groovy
+            if (value.indexOf('\\') >= 0 || value.indexOf('\n') >= 0 || (quote == '"' && value.indexOf('$') >= 0)) throw Unsupported.INSTANCE;
+            pos = end + 1;
+            return v -> value;
+        }
+
+        private Node parseNumber() throws Unsupported {
+            int start = pos;
+            while (pos < text.length() && Character.isDigit(text.charAt(pos))) pos++;
+            // octal, suffixed, decimal, or hexadecimal literals are left to Groovy
+            if (pos < text.length() && (Character.isLetterOrDigit(text.charAt(pos)) || text.charAt(pos) == '.' && pos + 1 < text.length() && Character.isDigit(text.charAt(pos + 1)))) throw Unsupported.INSTANCE;
+            String digits = text.substring(start, pos);
+            if (digits.length() > 1 && digits.charAt(0) == '0') throw Unsupported.INSTANCE;
+            final Object value;
+            try {
+                long l = Long.parseLong(digits);
+                value = l <= Integer.MAX_VALUE ? (Object) (int) l : (Object) l;
+            } catch (NumberFormatException e) {
+                throw Unsupported.INSTANCE; // BigInteger
+            }
+            return v -> value;
+        }
+
+        private Node parseIdentifier() throws Unsupported {
+            int start = pos;
+            while (pos < text.length() && (Character.isLetterOrDigit(text.charAt(pos)) || text.charAt(pos) == '_')) pos++;
+            if (pos < text.length() && text.charAt(pos) == '$') throw Unsupported.INSTANCE;
+            final String name = text.substring(start, pos);
+            switch (name) {
+            case "true":
+                return v -> Boolean.TRUE;
+            case "false":
+                return v -> Boolean.FALSE;
+            case "null":
+                return v -> null;
+            default:
+                if (KEYWORDS.contains(name)) throw Unsupported.INSTANCE;
+                if (peek() == '(' || peek() == '{') throw Unsupported.INSTANCE; // method call
+                return v -> {
+                    if (!v.containsKey(name)) throw Unsupported.INSTANCE; // let Groovy resolve it, or fail
+                    Object value = v.get(name);
+                    if (value != null && !(value instanceof String) && !(value instanceof Boolean) && !isInteger(value)) throw Unsupported.INSTANCE;
+                    return value;
+                };
+            }
+        }
+    }
+
+    private static final Set<String> KEYWORDS = Set.of(
+            "as", "assert", "break", "case", "catch", "class", "const", "continue", "def", "default", "do", "else",
+            "enum", "extends", "finally", "for", "goto", "if", "implements", "import", "in", "instanceof", "interface",
+            "new", "package", "return", "super", "switch", "this", "throw", "throws", "trait", "try", "var", "while",
+            "boolean", "byte", "char", "double", "float", "int", "long", "short", "void");
+}
@@ -1,8 +1,7 @@
 package hudson.matrix;
 
 import groovy.lang.Binding;
-import groovy.lang.GroovyShell;
-import groovy.lang.Script;
+import groovy.lang.GroovyClassLoader;
 import hudson.Extension;
 import hudson.Util;
 import hudson.matrix.MatrixBuild.MatrixBuildExecution;
@@ -10,12 +9,16 @@ import hudson.model.ParameterValue;
 import hudson.model.ParametersAction;
 import java.io.IOException;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import static java.lang.Boolean.*;
+import org.codehaus.groovy.runtime.InvokerHelper;
 import org.jenkinsci.plugins.scriptsecurity.sandbox.RejectedAccessException;
 import org.jenkinsci.plugins.scriptsecurity.sandbox.Whitelist;
 import org.jenkinsci.plugins.scriptsecurity.sandbox.groovy.GroovySandbox;
+import org.jenkinsci.plugins.scriptsecurity.sandbox.whitelists.ClassLoaderWhitelist;
 import org.jenkinsci.plugins.scriptsecurity.sandbox.whitelists.ProxyWhitelist;
 import org.jenkinsci.plugins.scriptsecurity.sandbox.whitelists.StaticWhitelist;
 import org.jenkinsci.plugins.scriptsecurity.scripts.ApprovalContext;
@@ -31,8 +34,14 @@ import org.jenkinsci.plugins.scriptsecurity.scripts.ScriptApproval;
 class FilterScript {
     private final String script;
 
+    /**
+     * The script when it is simple enough to be evaluated without Groovy, otherwise null.
+     */
+    private final FilterExpression expression;
+
     FilterScript(String script) {
         this.script = script;
+        this.expression = script != null && !DISABLE_NATIVE_EVALUATION ? FilterExpression.parse(script) : null;
     }
 
     /**
@@ -40,14 +49,69 @@ class FilterScript {
      *      Variables the script will see.
      */
     private boolean evaluate(Binding context) {
+        if (expression != null) {
+            Object r = expression.evaluate(context.getVariables());
+            if (r != FilterExpression.UNSUPPORTED) {
+                return TRUE.equals(r);
+            }
+        }
+        return evaluateWithGroovy(context);
+    }
+
+    /*package*/ boolean evaluateWithGroovy(Binding context) {
         try {
-            GroovyShell shell = new GroovyShell(GroovySandbox.createSecureClassLoader(FilterScript.class.getClassLoader()), context, GroovySandbox.createSecureCompilerConfiguration());
-            return TRUE.equals(GroovySandbox.run(shell, script, Whitelist.all()));
+            CompiledScript compiled = compile(script);
+            // like GroovySandbox.runScript, the script is also instantiated in the sandbox (SECURITY-1339)
+            Whitelist whitelist = new ProxyWhitelist(new ClassLoaderWhitelist(compiled.loader), Whitelist.all());
+            try (GroovySandbox.Scope scope = new GroovySandbox().withWhitelist(whitelist).enter()) {
+                return TRUE.equals(InvokerHelper.createScript(compiled.scriptClass, context).run());
+            }
         } catch (RejectedAccessException x) {
             throw ScriptApproval.get().accessRejected(x, ApprovalContext.create());
         }
     }
 
+    /**
+     * Compiles the script, or reuses the class compiled for the same script earlier.
+     * The same filter is typically evaluated for every combination of the matrix.
+     */
+    private static CompiledScript compile(String script) {
+        CompiledScript compiled = COMPILED.get(script);
+        if (compiled == null) {
+            GroovyClassLoader loader = new GroovyClassLoader(GroovySandbox.createSecureClassLoader(FilterScript.class.getClassLoader()), GroovySandbox.createSecureCompilerConfiguration());
+            compiled = new CompiledScript(loader, loader.parseClass(script));
+            COMPILED.put(script, compiled);
+        }
+        return compiled;
+    }
+
+    private static final class CompiledScript {
+        private final GroovyClassLoader loader;
+        private final Class<?> scriptClass;
+
+        CompiledScript(GroovyClassLoader loader, Class<?> scriptClass) {
+            this.loader = loader;
+            this.scriptClass = scriptClass;
+        }
+    }
+
+    /**
+     * Escape hatch to always evaluate the filters with Groovy, even the ones {@link FilterExpression} understands.
+     */
+    private static final boolean DISABLE_NATIVE_EVALUATION = Boolean.getBoolean(FilterScript.class.getName()+".disableNativeEvaluation");
+
+    /**
+     * Maximum number of compiled filters kept around, least recently used first out.
+     */
+    private static final int CACHE_SIZE = Integer.getInteger(FilterScript.class.getName()+".cacheSize", 64);
+
+    private static final Map<String,CompiledScript> COMPILED = Collections.synchronizedMap(new LinkedHashMap<String,CompiledScript>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,CompiledScript> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    });
+
     /**
      * Obtains a number N such that "N%M==0" would create
      * a reasonable sparse matrix for integer M.
@@ -56,6 +56,12 @@ public abstract class Layouter<T> {
      */
     private int xSize, ySize, zSize;
 
+    /**
+     * Objects of all the cells, if {@link #fill(Cells)} provided them.
+     */
+    private Object[] cells;
+    private boolean filled;
+
 
     public Layouter(List<Axis> x, List<Axis> y, List<Axis> z) {
         this.x = x;
@@ -204,36 +210,159 @@ public abstract class Layouter<T> {
         }
     }
 
+    private static void buildMap(Map<String,String> m, int p, List<Axis> axes) {
+        int n = p;
+        for( int i= axes.size()-1; i>=0; i-- ) {
+            Axis a = axes.get(i);
+            m.put(a.getName(), a.value(n%a.size()));
+            n /= a.size();
+        }
+    }
+
+    private void addTrivial(Map<String,String> m) {
+        for (Axis a : trivial) {
+            if (a.size() > 0) {
+                m.put(a.getName(), a.value(0));
+            }
+        }
+    }
+
     protected abstract T getT(Combination c);
 
-    public final class Column extends AbstractList<T> {
+    /**
+     * Provides the objects of all the cells in one go, instead of one {@link #getT(Combination)} call per cell.
+     *
+     * <p>
+     * Drawing a big matrix with {@link #getT(Combination)} creates a {@link Combination} for each cell, which
+     * then usually gets looked up in a map. Implementations that already have the objects at hand can
+     * put them straight into their cells instead. Cells that are left empty hold null.
+     *
+     * @return
+     *      false to use {@link #getT(Combination)}, which is what the default implementation does.
+     */
+    protected boolean fill(Cells cells) {
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T getCell(int xp, int yp, int zp) {
+        if (!filled) {
+            filled = true;
+            Cells c = new Cells();
+            if (fill(c)) {
+                cells = c.values;
+            }
+        }
+        if (cells != null) {
+            return (T) cells[index(xp, yp, zp, ySize, zSize)];
+        }
+        return null;
+    }
+
+    /**
+     * Cells of the table, given to {@link #fill(Cells)}.
+     */
+    public final class Cells {
+        private final Object[] values = new Object[xSize*ySize*zSize];
         /**
-         * Cell position.
+         * For each axis in the table, the index of its values.
          */
-        private int xp,yp;
+        private final Map<String,Map<String,Integer>> valueIndices = new HashMap<String,Map<String,Integer>>();
 
-        private final Map<String,String> m = new HashMap<String,String>();
+        private Cells() {
+            for (List<Axis> axes : List.of(x, y, z)) {
+                for (Axis a : axes) {
+                    Map<String,Integer> m = new HashMap<String,Integer>();
+                    for (int i = a.size()-1; i>=0; i--)
+                        m.put(a.value(i), i); // first occurrence wins, like Axis.indexOf
+                    valueIndices.put(a.getName(), m);
+                }
+            }
+        }
 
-        public T get(int zp) {
-            m.clear();
-            buildMap(xp,x);
-            buildMap(yp,y);
-            buildMap(zp,z);
+        /**
+         * Number of cells.
+         */
+        public int size() {
+            return values.length;
+        }
+
+        /**
+         * Gets the combination of the given cell, which is what {@link #getT(Combination)} would be called with.
+         */
+        public Combination getCombination(int index) {
+            int zp = index % zSize;
+            int yp = (index / zSize) % ySize;
+            int xp = index / zSize / ySize;
+            Map<String,String> m = new HashMap<String,String>();
+            buildMap(m, xp, x);
+            buildMap(m, yp, y);
+            buildMap(m, zp, z);
+            addTrivial(m);
+            return new Combination(m);
+        }
+
+        /**
+         * Finds the cell of the given combination.
+         *
+         * @return -1 if the combination does not appear in the table.
+         */
+        public int indexOf(Combination c) {
+            int trivialAxes = 0;
             for (Axis a : trivial) {
                 if (a.size() > 0) {
-                    m.put(a.getName(), a.value(0));
+                    if (!a.value(0).equals(c.get(a))) return -1;
+                    trivialAxes++;
                 }
             }
-            return getT(new Combination(m));
+            if (c.size() != x.size()+y.size()+z.size()+trivialAxes) return -1;
+
+            int xp = position(c, x), yp = position(c, y), zp = position(c, z);
+            if (xp<0 || yp<0 || zp<0) return -1;
+            return index(xp, yp, zp, ySize, zSize);
         }
 
-        private void buildMap(int p, List<Axis> axes) {
-            int n = p;
-            for( int i= axes.size()-1; i>=0; i-- ) {
-                Axis a = axes.get(i);
-                m.put(a.getName(), a.value(n%a.size()));
-                n /= a.size();
+        private int position(Combination c, List<Axis> axes) {
+            int p = 0;
+            for (Axis a : axes) {
+                Integer i = valueIndices.get(a.getName()).get(c.get(a));
+                if (i == null) return -1;
+                p = p*a.size() + i;
             }
+            return p;
+        }
+
+        /**
+         * Sets the object of the given cell.
+         */
+        public void set(int index, T value) {
+            values[index] = value;
+        }
+    }
+
+    private static int index(int xp, int yp, int zp, int ySize, int zSize) {
+        return (xp*ySize + yp)*zSize + zp;
+    }
+
+    public final class Column extends AbstractList<T> {
+        /**
+         * Cell position.
+         */
+        private int xp,yp;
+
+        private final Map<String,String> m = new HashMap<String,String>();
+
+        public T get(int zp) {
+            T t = getCell(xp, yp, zp);
+            if (cells != null)
+                return t;
+
+            m.clear();
+            buildMap(m,xp,x);
+            buildMap(m,yp,y);
+            buildMap(m,zp,z);
+            addTrivial(m);
+            return getT(new Combination(m));
         }
 
         public int size() {
@@ -25,9 +25,11 @@ package hudson.matrix;
 
 import hudson.model.Job;
 import hudson.tasks.LogRotator;
-import hudson.util.RunList;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.SortedSet;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -58,17 +60,48 @@ final class LinkedLogRotator extends LogRotator {
 
     @Override
     public void perform(Job _job) throws IOException, InterruptedException {
-        // Let superclass handle clearing artifacts, if configured:
-        super.perform(_job);
         if (!(_job instanceof MatrixConfiguration)) {
+            // Let superclass handle clearing artifacts, if configured:
+            super.perform(_job);
             LOGGER.log(Level.SEVERE, "Log rotator got a job with a wrong type. {0} of {1}", 
                     new Object[] {_job.getFullName(), _job.getClass()});
+            return;
         }
         MatrixConfiguration job = (MatrixConfiguration) _job;
+        perform(job, getBuildNumbers(job.getParent()));
+    }
 
-        // copy it to the array because we'll be deleting builds as we go.
-        for( MatrixRun r : job.getBuilds() ) {
-            if(job.getParent().getBuildByNumber(r.getNumber())==null) {
+    /**
+     * Like {@link #perform(Job)}, with the numbers of the builds of the parent already at hand,
+     * so that they're listed once when all the configurations get rotated.
+     */
+    /*package*/ void perform(MatrixConfiguration job, SortedSet<Integer> parentBuilds) throws IOException, InterruptedException {
+        // Let superclass handle clearing artifacts, if configured:
+        super.perform(job);
+        deleteOrphanedRuns(job, parentBuilds);
+    }
+
+    /**
+     * Deletes the runs of the configuration whose parent build is gone, and the configuration itself if it is
+     * inactive and has no run left.
+     *
+     * <p>
+     * The numbers are compared as found on the disk, so only the candidates for deletion are loaded,
+     * rather than every run of the configuration along with the parent build of the same number.
+     * As parent builds may have started since they were listed, runs above the last listed number are kept,
+     * and so are those still building or whose parent build turns out to exist.
+     *
+     * @param parentBuilds
+     *      Numbers of the builds of {@link MatrixConfiguration#getParent()}, see {@link #getBuildNumbers(Job)}.
+     */
+    /*package*/ static void deleteOrphanedRuns(MatrixConfiguration job, SortedSet<Integer> parentBuilds) throws IOException {
+        int last = parentBuilds.isEmpty() ? 0 : parentBuilds.last();
+        for (int n : getBuildNumbers(job)) {
+            if (n > last) break;
+            if (parentBuilds.contains(n)) continue;
+            if (job.getParent().getBuildByNumber(n) != null) continue;
+            MatrixRun r = job.getBuildByNumber(n);
+            if (r != null && !r.isBuilding()) {
                 LOGGER.log(Level.FINE, "Deleting {0}", r.getFullDisplayName());
                 r.delete();
             }
@@ -80,5 +113,36 @@ final class LinkedLogRotator extends LogRotator {
         }
     }
 
+    /**
+     * Lists the numbers of the builds of the given job that are on the disk, without loading them.
+     */
+    /*package*/ static SortedSet<Integer> getBuildNumbers(Job<?,?> job) {
+        SortedSet<Integer> numbers = new TreeSet<Integer>();
+        File dir = job.getBuildDir();
+        String[] names = dir.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.isEmpty() || name.length() > 10 || !isDigits(name)) continue;
+                try {
+                    int n = Integer.parseInt(name);
+                    if (n > 0 && new File(dir, name).isDirectory()) {
+                        numbers.add(n);
+                    }
+                } catch (NumberFormatException e) {
+                    // beyond int
+                }
+            }
+        }
+        return numbers;
+    }
+
+    private static boolean isDigits(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch < '0' || ch > '9') return false;
+        }
+        return true;
+    }
+
     private static final Logger LOGGER = Logger.getLogger(LinkedLogRotator.class.getName());
 }
@@ -0,0 +1,200 @@
+package hudson.matrix;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.AbortException;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import org.springframework.security.core.Authentication;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Calls {@link MatrixAggregator#endRunAsync(MatrixRun)} as the {@link MatrixRun}s complete, either from
+ * the calling thread, or from a background thread so that the aggregation overlaps with the configurations
+ * that are still running.
+ *
+ * <p>
+ * Runs are handed to the aggregators one at a time and in the order they got submitted, just like they
+ * would be from the thread that runs the {@link MatrixBuild}. Once an aggregator fails, the remaining runs
+ * are skipped and the failure is rethrown from the next {@link #submit(MatrixRun)} or {@link #drain()}.
+ *
+ * <p>
+ * Aggregations that an aggregator completes asynchronously are only waited for when more than
+ * {@link #MAX_OUTSTANDING} of them are outstanding, oldest first, or by {@link #drain()}.
+ * Their failures are reported in the order the runs were submitted.
+ *
+ * <p>
+ * Except for the aggregation itself, this class is meant to be used from the thread that runs the {@link MatrixBuild}.
+ */
+final class MatrixAggregationQueue {
+    private final List<MatrixAggregator> aggregators;
+
+    /**
+     * Null when aggregating from the calling thread.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Aggregations that may not have been completed yet, in the order they got submitted.
+     */
+    private final List<Future<Void>> pending = new ArrayList<Future<Void>>();
+
+    /**
+     * Aggregations that the aggregators have not completed yet, in the order they were started.
+     * Only the thread that aggregates adds and removes them.
+     */
+    private final Deque<CompletableFuture<Boolean>> outstanding = new ConcurrentLinkedDeque<CompletableFuture<Boolean>>();
+
+    private volatile boolean failed;
+
+    /**
+     * @param background
+     *      if true, the aggregation happens on a thread of its own.
+     */
+    MatrixAggregationQueue(MatrixBuild build, List<MatrixAggregator> aggregators, boolean background) {
+        this.aggregators = aggregators;
+        this.executor = !background ? null : Executors.newSingleThreadExecutor(
+                new NamingThreadFactory(new DaemonThreadFactory(), "MatrixAggregationQueue for " + build.getExternalizableId()));
+    }
+
+    /**
+     * Schedules the aggregation of a completed run.
+     *
+     * @param run
+     *      Null if the configuration got cancelled before it started, in which case there is nothing to aggregate.
+     */
+    void submit(final MatrixRun run) throws IOException, InterruptedException {
+        if (executor == null) {
+            if (run != null) {
+                aggregate(run);
+            }
+            return;
+        }
+
+        checkPending(false);
+        if (run == null) return;
+
+        // aggregate with the same permissions as the build itself
+        final Authentication auth = Jenkins.getAuthentication2();
+        pending.add(executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                if (failed) return null;
+                try (ACLContext ctx = ACL.as2(auth)) {
+                    aggregate(run);
+                } catch (Exception | Error e) {
+                    failed = true;
+                    throw e;
+                }
+                return null;
+            }
+        }));
+    }
+
+    /**
+     * Waits until all the submitted runs have been aggregated.
+     */
+    void drain() throws IOException, InterruptedException {
+        if (executor == null) {
+            awaitOutstanding(0);
+            return;
+        }
+        pending.add(executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                if (!failed) {
+                    awaitOutstanding(0);
+                }
+                return null;
+            }
+        }));
+        checkPending(true);
+    }
+
+    /**
+     * Stops the aggregation, abandoning the runs that have not been aggregated yet.
+     */
+    void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        // best effort, the aggregators may not be able to stop what they started
+        for (CompletableFuture<Boolean> f : outstanding) {
+            f.cancel(true);
+        }
+    }
+
+    private void aggregate(MatrixRun run) throws IOException, InterruptedException {
+        for (MatrixAggregator a : aggregators) {
+            outstanding.add(a.endRunAsync(run).toCompletableFuture());
+        }
+        awaitOutstanding(MAX_OUTSTANDING);
+    }
+
+    /**
+     * Waits for the oldest outstanding aggregations until no more than the given number are left,
+     * and rethrows the failure of any that is already completed.
+     */
+    private void awaitOutstanding(int max) throws IOException, InterruptedException {
+        while (!outstanding.isEmpty() && (outstanding.size() > max || outstanding.peek().isDone())) {
+            try {
+                if (Boolean.FALSE.equals(outstanding.poll().get()))
+                    throw new AbortException();
+            } catch (ExecutionException e) {
+                throw rethrow(e);
+            }
+        }
+    }
+
+    /**
+     * Rethrows the failure of any of the completed aggregations.
+     *
+     * @param wait
+     *      If true, wait for all the pending aggregations to complete.
+     *      Otherwise, only look at the ones that are already done.
+     */
+    private void checkPending(boolean wait) throws IOException, InterruptedException {
+        for (Iterator<Future<Void>> itr = pending.iterator(); itr.hasNext(); ) {
+            Future<Void> f = itr.next();
+            if (!wait && !f.isDone()) {
+                break; // aggregations complete in order
+            }
+            try {
+                f.get();
+            } catch (ExecutionException e) {
+                throw rethrow(e);
+            }
+            itr.remove();
+        }
+    }
+
+    private static IOException rethrow(ExecutionException e) throws IOException, InterruptedException {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) throw (IOException) cause;
+        if (cause instanceof InterruptedException) throw (InterruptedException) cause;
+        if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+        if (cause instanceof Error) throw (Error) cause;
+        throw new IOException(cause);
+    }
+
+    /**
+     * Maximum number of aggregations that the aggregators can have started but not completed,
+     * before the build waits for them.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "Can be changed in the runtime by Groovy scripts")
+    public static int MAX_OUTSTANDING = Integer.getInteger(MatrixAggregationQueue.class.getName() + ".maxOutstanding", 16);
+}
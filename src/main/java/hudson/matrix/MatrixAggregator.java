@@ -30,6 +30,8 @@ import hudson.tasks.BuildStep;
 import hudson.tasks.Publisher;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
  * Performs the aggregation of {@link MatrixRun} results
@@ -92,6 +94,23 @@ public abstract class MatrixAggregator implements ExtensionPoint {
         return true;
     }
 
+    /**
+     * Called whenever one run is completed, like {@link #endRun(MatrixRun)}, but lets the aggregator
+     * complete the aggregation later, for example on a thread of its own, while the build moves on.
+     *
+     * <p>
+     * Calls are made one at a time, in the order the runs complete, but the returned stages may complete
+     * in any order. A limited number of them can be outstanding; past that, the build waits for the oldest.
+     * All of them are complete before {@link #endBuild()} gets called.
+     *
+     * @return
+     *      completes with the value {@link #endRun(MatrixRun)} would return, or with its exception.
+     *      By default, calls {@link #endRun(MatrixRun)} and returns a completed stage.
+     */
+    public CompletionStage<Boolean> endRunAsync(MatrixRun run) throws InterruptedException, IOException {
+        return CompletableFuture.completedFuture(endRun(run));
+    }
+
     /**
      * Called after all the {@link MatrixRun}s have been completed
      * to indicate that the build is about to finish.
@@ -102,4 +121,25 @@ public abstract class MatrixAggregator implements ExtensionPoint {
     public boolean endBuild() throws InterruptedException, IOException {
         return true;
     }
+
+    /**
+     * Checks if {@link #endBuild()} can run on another thread, at the same time as
+     * the {@link #endBuild()} of other aggregators of the build that return true.
+     *
+     * <p>
+     * Aggregators that take long to end and don't depend on the work of the other aggregators
+     * (such as an action another one contributes) can return true, so that the build finishes sooner.
+     *
+     * <p>
+     * When several aggregators of a build return true, all of them start ending right away, possibly
+     * before the aggregators ahead of them that return false have ended.
+     * Their failures and results are still reported to {@link #listener} in the order of the aggregators.
+     *
+     * @return
+     *      false by default, in which case {@link #endBuild()} is called from the thread that runs the build,
+     *      in the order of the aggregators.
+     */
+    public boolean isEndBuildConcurrent() {
+        return false;
+    }
 }
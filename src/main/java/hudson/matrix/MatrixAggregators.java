@@ -0,0 +1,133 @@
+package hudson.matrix;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Functions;
+import hudson.model.BuildListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import org.springframework.security.core.Authentication;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls the {@link MatrixAggregator}s of a {@link MatrixBuild} as a whole.
+ */
+final class MatrixAggregators {
+    private MatrixAggregators() {}
+
+    /**
+     * Calls {@link MatrixAggregator#endBuild()} on all the aggregators.
+     *
+     * <p>
+     * The aggregators that are {@linkplain MatrixAggregator#isEndBuildConcurrent() concurrent} end at the same time
+     * on a shared pool, while the others end one after the other on the calling thread, in their order.
+     * Failures are reported in the order of the aggregators, regardless of which one ended first: each one is
+     * written to the listener, and the first one is thrown once all the concurrent aggregators are done, with
+     * the others suppressed. Aggregators that return false are written to the listener too. As before, a failure
+     * keeps the aggregators that are not concurrent and come after it from ending.
+     */
+    static void endBuild(List<MatrixAggregator> aggregators, BuildListener listener) throws Exception {
+        int concurrent = 0;
+        for (MatrixAggregator a : aggregators) {
+            if (a.isEndBuildConcurrent()) concurrent++;
+        }
+        if (concurrent < 2 || END_BUILD_PARALLELISM < 2) {
+            for (MatrixAggregator a : aggregators)
+                a.endBuild();
+            return;
+        }
+
+        // end with the same permissions as the build itself
+        final Authentication auth = Jenkins.getAuthentication2();
+        List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(aggregators.size());
+        for (final MatrixAggregator a : aggregators) {
+            futures.add(!a.isEndBuildConcurrent() ? null : getPool().submit(new Callable<Boolean>() {
+                public Boolean call() throws Exception {
+                    try (ACLContext ctx = ACL.as2(auth)) {
+                        return a.endBuild();
+                    }
+                }
+            }));
+        }
+
+        Throwable failure = null;
+        try {
+            for (int i = 0; i < aggregators.size(); i++) {
+                Future<Boolean> f = futures.get(i);
+                MatrixAggregator a = aggregators.get(i);
+                try {
+                    boolean ok;
+                    if (f != null) {
+                        ok = f.get();
+                    } else if (failure == null) {
+                        ok = a.endBuild();
+                    } else {
+                        continue;
+                    }
+                    if (!ok) {
+                        listener.error(a.getClass().getName() + " failed to aggregate the results");
+                    }
+                } catch (ExecutionException e) {
+                    failure = addFailure(failure, report(listener, a, e.getCause()));
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception | Error e) {
+                    failure = addFailure(failure, report(listener, a, e));
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<Boolean> f : futures) {
+                if (f != null) f.cancel(true);
+            }
+            throw e;
+        }
+
+        if (failure instanceof Exception) throw (Exception) failure;
+        if (failure instanceof Error) throw (Error) failure;
+        if (failure != null) throw new IOException(failure);
+    }
+
+    private static Throwable report(BuildListener listener, MatrixAggregator a, Throwable t) {
+        Functions.printStackTrace(t, listener.error(a.getClass().getName() + " failed to aggregate the results"));
+        return t;
+    }
+
+    private static Throwable addFailure(Throwable first, Throwable t) {
+        if (first == null) return t;
+        first.addSuppressed(t);
+        return first;
+    }
+
+    private static synchronized ExecutorService getPool() {
+        if (pool == null) {
+            ThreadPoolExecutor p = new ThreadPoolExecutor(END_BUILD_PARALLELISM, END_BUILD_PARALLELISM, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "MatrixAggregator.endBuild"));
+            p.allowCoreThreadTimeOut(true);
+            pool = p;
+        }
+        return pool;
+    }
+
+    private static ExecutorService pool;
+
+    /**
+     * Maximum number of {@link MatrixAggregator#endBuild()} running at the same time, shared by all the builds.
+     * Below 2, the aggregators always end one after the other. Only read when the pool is first used.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "Can be changed in the runtime by Groovy scripts")
+    public static int END_BUILD_PARALLELISM = Integer.getInteger(MatrixAggregators.class.getName() + ".endBuildParallelism",
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())));
+}
@@ -25,7 +25,9 @@
 package hudson.matrix;
 
 import com.google.common.annotations.VisibleForTesting;
+import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.AbortException;
+import hudson.Extension;
 import hudson.ExtensionList;
 import hudson.Functions;
 import hudson.Util;
@@ -34,11 +36,16 @@ import hudson.matrix.MatrixConfiguration.ParentBuildAction;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.BuildListener;
+import hudson.model.Computer;
 import hudson.model.Executor;
 import hudson.model.Fingerprint;
 import hudson.model.Queue;
 import hudson.model.Queue.Item;
 import hudson.model.Result;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
 import hudson.tasks.junit.JUnitResultArchiver;
 import hudson.tasks.test.TestResultAggregator;
 import hudson.util.HttpResponses;
@@ -58,8 +65,14 @@ import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import edu.umd.cs.findbugs.annotations.CheckForNull;
 
 import jakarta.servlet.ServletException;
@@ -77,6 +90,38 @@ public class MatrixBuild extends AbstractBuild<MatrixProject,MatrixBuild> {
      */
     private Integer baseBuild;
 
+    /**
+     * Number of the {@link MatrixRun} that each combination resolves to in this build, keyed by {@link Combination#toString()}.
+     * That is this build's number for the configurations that ran, and the number of an older build for the inherited ones.
+     *
+     * <p>
+     * Computed when the build completes, and replaced rather than modified afterwards.
+     * Null while the build is running, and for builds that completed before this was recorded.
+     */
+    private volatile Map<String,Integer> runIndex;
+
+    /**
+     * Subset of {@link #runIndex} for the active configurations of this build that did not run, and inherited a run
+     * of an older build instead. Null if not recorded, like {@link #runIndex}.
+     */
+    private volatile Map<String,Integer> inheritedRuns;
+
+    /**
+     * Numbers of the builds in {@link #inheritedRuns}, which this build is linked to.
+     */
+    private transient volatile Set<Integer> linkedBuilds;
+
+    /**
+     * Configurations to compute {@link #runIndex} with, while that waits for the base build to compute its own.
+     * Null otherwise.
+     */
+    private transient Collection<MatrixConfiguration> pendingIndex;
+
+    /**
+     * Later builds whose {@link #runIndex} waits for this one, see {@link #deferIndexOf(MatrixBuild)}.
+     */
+    private transient List<MatrixBuild> indexDependents;
+
     public MatrixBuild(MatrixProject job) throws IOException {
         super(job);
     }
@@ -93,6 +138,8 @@ public class MatrixBuild extends AbstractBuild<MatrixProject,MatrixBuild> {
         // MatrixBuild.axes added in 1.285; default to parent axes for old data
         if (axes==null)
             axes = getParent().getAxes();
+        if (inheritedRuns!=null)
+            linkedBuilds = new HashSet<Integer>(inheritedRuns.values());
         return this;
     }
 
@@ -182,13 +229,44 @@ public class MatrixBuild extends AbstractBuild<MatrixProject,MatrixBuild> {
 
     public Layouter<RunPtr> getLayouter() {
         // axes can be null if build page is access right when build starts
+        final AxisList axes = this.axes;
         return axes == null ? null : new Layouter<RunPtr>(axes) {
             protected RunPtr getT(Combination c) {
                 return new RunPtr(c);
             }
+
+            @Override
+            protected boolean fill(Cells cells) {
+                // the axes of a build don't change, so neither do the pointers
+                RunPtrs ptrs = runPtrs;
+                if (ptrs == null || ptrs.axes != axes || ptrs.cells.length != cells.size()) {
+                    RunPtr[] all = new RunPtr[cells.size()];
+                    for (int i = 0; i < all.length; i++)
+                        all[i] = new RunPtr(cells.getCombination(i));
+                    runPtrs = ptrs = new RunPtrs(axes, all);
+                }
+                for (int i = 0; i < ptrs.cells.length; i++)
+                    cells.set(i, ptrs.cells[i]);
+                return true;
+            }
         };
     }
 
+    /**
+     * {@link RunPtr}s of the cells of {@link #getLayouter()}, which get reused for every page rendering.
+     */
+    private transient volatile RunPtrs runPtrs;
+
+    private static final class RunPtrs {
+        final AxisList axes;
+        final RunPtr[] cells;
+
+        RunPtrs(AxisList axes, RunPtr[] cells) {
+            this.axes = axes;
+            this.cells = cells;
+        }
+    }
+
     /**
      * Sets the base build from which this build is derived.
      * @since 1.416
@@ -231,15 +309,57 @@ public class MatrixBuild extends AbstractBuild<MatrixProject,MatrixBuild> {
      */
     @Exported
     public List<MatrixRun> getRuns() {
-        List<MatrixRun> r = new ArrayList<MatrixRun>();
+        List<MatrixRun> r = getIndexedRuns(false);
+        if (r != null) return r;
+
+        r = new ArrayList<MatrixRun>();
         for(MatrixConfiguration c : getParent().getItems()) {
             MatrixRun b = getRunForConfiguration(c);
             if (b != null) r.add(b);
         }
         return r;
     }
-    
+
+    /**
+     * Lists the runs of this build with {@link #runIndex}.
+     *
+     * @param exact
+     *      Whether to exclude the inherited runs.
+     * @return
+     *      null if there is no usable index.
+     */
+    private List<MatrixRun> getIndexedRuns(boolean exact) {
+        Map<String,Integer> index = runIndex;
+        if (index == null) return null;
+
+        // in the same order as the configurations
+        Map<Combination,MatrixRun> runs = new TreeMap<Combination,MatrixRun>();
+        for (Map.Entry<String,Integer> e : index.entrySet()) {
+            if (exact && e.getValue() != getNumber()) continue;
+            Combination combination;
+            try {
+                combination = Combination.fromString(e.getKey());
+            } catch (IllegalArgumentException x) {
+                return null;
+            }
+            MatrixConfiguration c = getParent().getItem(combination);
+            if (c == null) continue;
+            MatrixRun b = exact ? c.getBuildByNumber(getNumber()) : getRunForConfiguration(c);
+            if (b != null) runs.put(c.getCombination(), b);
+        }
+        return new ArrayList<MatrixRun>(runs.values());
+    }
+
     private MatrixRun getRunForConfiguration(MatrixConfiguration c) {
+        Map<String,Integer> index = runIndex;
+        if (index != null) {
+            Integer n = index.get(c.getCombination().toString());
+            if (n != null) {
+                MatrixRun r = c.getBuildByNumber(n);
+                if (r != null) return r;
+                // deleted since, so look further
+            }
+        }
         for (MatrixBuild b=this; b!=null; b=b.getBaseBuild()) {
             MatrixRun r = c.getBuildByNumber(b.getNumber());
             if (r!=null)    return r;
@@ -255,7 +375,10 @@ public class MatrixBuild extends AbstractBuild<MatrixProject,MatrixBuild> {
      * @since 1.413
      */
     public List<MatrixRun> getExactRuns() {
-        List<MatrixRun> r = new ArrayList<MatrixRun>();
+        List<MatrixRun> r = getIndexedRuns(true);
+        if (r != null) return r;
+
+        r = new ArrayList<MatrixRun>();
         for(MatrixConfiguration c : getParent().getItems()) {
             MatrixRun b = c.getBuildByNumber(getNumber());
             if (b != null) r.add(b);
@@ -285,6 +408,9 @@ public class MatrixBuild extends AbstractBuild<MatrixProject,MatrixBuild> {
     public boolean isLinkedBy(MatrixBuild b) {
     	if(null == b)
     		return false;
+        Set<Integer> linked = b.linkedBuilds;
+        if (linked != null)
+            return linked.contains(getNumber());
     	for(MatrixConfiguration c : b.getParent().getActiveConfigurations()) {
             MatrixRun r = c.getNearestOldBuild(b.getNumber());
             if (r != null && r.getNumber()==getNumber())
@@ -297,6 +423,9 @@ public class MatrixBuild extends AbstractBuild<MatrixProject,MatrixBuild> {
      * True if this build didn't do a full build and it is depending on the result of the previous build.
      */
     public boolean isPartial() {
+        Map<String,Integer> inherited = inheritedRuns;
+        if (inherited != null)
+            return !inherited.isEmpty();
         for(MatrixConfiguration c : getParent().getActiveConfigurations()) {
             MatrixRun b = c.getNearestOldBuild(getNumber());
             if (b != null && b.getNumber()!=getNumber())
@@ -331,6 +460,139 @@ public class MatrixBuild extends AbstractBuild<MatrixProject,MatrixBuild> {
         execute(new MatrixBuildExecution());
     }
 
+    /**
+     * Computes {@link #runIndex} once all the configurations of this build are done.
+     *
+     * <p>
+     * The index is derived from the one of the base build, so if that build is still running, with runs that may
+     * yet complete, this waits for it to be indexed. Until then, runs are looked up through the chain of builds.
+     *
+     * @param activeConfigurations
+     *      Configurations that may have run as a part of this build.
+     */
+    private void indexRuns(Collection<MatrixConfiguration> activeConfigurations) {
+        List<MatrixBuild> dependents;
+        synchronized (this) {
+            MatrixBuild base = getBaseBuild();
+            if (base != null && base.deferIndexOf(this)) {
+                pendingIndex = activeConfigurations;
+                return;
+            }
+            pendingIndex = null;
+
+            Map<String,Integer> index = new TreeMap<String,Integer>();
+            Map<String,Integer> baseIndex = base != null ? base.runIndex : null;
+            if (base != null && baseIndex == null) {
+                // older build without an index, resolve everything the slow way once
+                for (MatrixConfiguration c : getParent().getItems()) {
+                    MatrixRun r = getRunForConfiguration(c);
+                    if (r != null) index.put(c.getCombination().toString(), r.getNumber());
+                }
+            } else {
+                if (baseIndex != null) index.putAll(baseIndex);
+                for (MatrixConfiguration c : activeConfigurations) {
+                    if (c.getBuildByNumber(getNumber()) != null)
+                        index.put(c.getCombination().toString(), getNumber());
+                }
+            }
+
+            Map<String,Integer> inherited = new TreeMap<String,Integer>();
+            for (MatrixConfiguration c : activeConfigurations) {
+                String key = c.getCombination().toString();
+                Integer n = index.get(key);
+                if (n != null && n != getNumber())
+                    inherited.put(key, n);
+            }
+
+            runIndex = index;
+            setInheritedRuns(inherited);
+
+            dependents = indexDependents;
+            indexDependents = null;
+        }
+
+        // outside of the lock, as the dependents lock themselves before this build
+        if (dependents != null) {
+            for (MatrixBuild d : dependents)
+                d.resumeIndexRuns();
+        }
+    }
+
+    /**
+     * Makes the {@link #runIndex} of the given later build wait for the one of this build, if this build
+     * is still running or waiting itself.
+     *
+     * @return true if the index of the later build has to wait.
+     */
+    private synchronized boolean deferIndexOf(MatrixBuild b) {
+        if (runIndex != null || (!isBuilding() && pendingIndex == null)) return false;
+        if (indexDependents == null) indexDependents = new ArrayList<MatrixBuild>();
+        indexDependents.add(b);
+        return true;
+    }
+
+    /**
+     * Computes {@link #runIndex} that waited for the base build, now that it is indexed.
+     */
+    private void resumeIndexRuns() {
+        Collection<MatrixConfiguration> active;
+        synchronized (this) {
+            active = pendingIndex;
+            if (active == null) return;
+        }
+        indexRuns(active);
+        if (runIndex == null) return;
+        try {
+            save();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save the run index of " + this, e);
+        }
+    }
+
+    private void setInheritedRuns(Map<String,Integer> inherited) {
+        linkedBuilds = new HashSet<Integer>(inherited.values());
+        inheritedRuns = inherited;
+    }
+
+    /**
+     * Records a {@link MatrixRun} of this build that completed after the build itself.
+     */
+    private synchronized void indexRun(MatrixRun run) throws IOException {
+        Map<String,Integer> index = runIndex;
+        if (index == null) return; // will be computed when this build completes
+
+        String key = run.getParent().getCombination().toString();
+        Integer n = index.get(key);
+        if (n != null && n == run.getNumber()) return;
+
+        Map<String,Integer> updated = new TreeMap<String,Integer>(index);
+        updated.put(key, run.getNumber());
+        runIndex = updated;
+
+        Map<String,Integer> inherited = inheritedRuns;
+        if (inherited != null && inherited.containsKey(key)) {
+            inherited = new TreeMap<String,Integer>(inherited);
+            inherited.remove(key);
+            setInheritedRuns(inherited);
+        }
+        save();
+    }
+
+    @Extension
+    @Restricted(NoExternalUse.class)
+    public static final class RunIndexUpdater extends RunListener<MatrixRun> {
+        @Override
+        public void onCompleted(MatrixRun r, @NonNull TaskListener listener) {
+            MatrixBuild b = r.getParentBuild();
+            if (b == null) return;
+            try {
+                b.indexRun(r);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to record " + r + " in " + b, e);
+            }
+        }
+    }
+
     @Override
     public Fingerprint.RangeSet getDownstreamRelationship(AbstractProject that) {
         Fingerprint.RangeSet rs = super.getDownstreamRelationship(that);
@@ -347,6 +609,7 @@ public class MatrixBuild extends AbstractBuild<MatrixProject,MatrixBuild> {
     public class MatrixBuildExecution extends AbstractBuildExecution {
         private final List<MatrixAggregator> aggregators = new ArrayList<MatrixAggregator>();
         private Set<MatrixConfiguration> activeConfigurations;
+        private MatrixRunTracker runTracker;
 
         /**
          * Snapshot of {@link MatrixProject#getActiveConfigurations()} to ensure
@@ -364,6 +627,13 @@ public class MatrixBuild extends AbstractBuild<MatrixProject,MatrixBuild> {
             return aggregators;
         }
 
+        /**
+         * Tracks the {@link MatrixRun}s of this build while it is running.
+         */
+        /*package*/ MatrixRunTracker getRunTracker() {
+            return runTracker;
+        }
+
         protected Result doRun(BuildListener listener) throws Exception {
             MatrixProject p = getProject();
             PrintStream logger = listener.getLogger();
@@ -379,6 +649,7 @@ public class MatrixBuild extends AbstractBuild<MatrixProject,MatrixBuild> {
             activeConfigurations = config.config;
             axes = config.axisList;
 
+            runTracker = MatrixRunTracker.open(MatrixBuild.this, listener);
             try {
                 return p.getExecutionStrategy().run(this);
             } catch( InterruptedException e ) {
@@ -397,28 +668,77 @@ public class MatrixBuild extends AbstractBuild<MatrixProject,MatrixBuild> {
                 final Jenkins jenkins = Jenkins.getInstance();
                 if (jenkins == null) {
                      logger.println("Jenkins instance is not ready. Cannot interrupt configurations");
-                } else {
-                    Queue q = jenkins.getQueue();
-                    synchronized(q) {// avoid micro-locking in q.cancel.
-                        final int n = getNumber();
-                        for (MatrixConfiguration c : activeConfigurations) {
-                            for (Item i : q.getItems(c)) {
-                                ParentBuildAction a = i.getAction(ParentBuildAction.class);
-                                if (a!=null && a.getMatrixBuild()==getBuild()) {
-                                    q.cancel(i);
-                                    logger.println(Messages.MatrixBuild_Cancelled(ModelHyperlinkNote.encodeTo(c)));
-                                }
-                            }
-                            MatrixRun b = c.getBuildByNumber(n);
-                            if(b!=null && b.isBuilding()) {// executor can spend some time in post production state, so only cancel in-progress builds.
-                                Executor exe = b.getExecutor();
-                                if(exe!=null) {
-                                    logger.println(Messages.MatrixBuild_Interrupting(ModelHyperlinkNote.encodeTo(b)));
-                                    exe.interrupt();
-                                }
-                            }
+                } else if (activeConfigurations != null) {
+                    cancelConfigurations(jenkins, logger, true);
+                }
+                runTracker.close();
+            }
+        }
+
+        /**
+         * Cancels the queued configurations of this build, and optionally interrupts the running ones,
+         * for example when {@link MatrixExecutionStrategy} gives up on the build.
+         *
+         * @param interrupt
+         *      if true, the running configurations of this build are interrupted too.
+         */
+        /*package*/ void cancelConfigurations(boolean interrupt) {
+            Jenkins jenkins = Jenkins.getInstance();
+            if (jenkins != null && activeConfigurations != null) {
+                cancelConfigurations(jenkins, listener.getLogger(), interrupt);
+            }
+        }
+
+        /**
+         * Cancels the queued configurations of this build, and interrupts the running ones.
+         *
+         * <p>
+         * The queue is only locked while the items get cancelled, which happens in one go, so that aborting
+         * a large matrix does not hold up the scheduling of everything else.
+         */
+        private void cancelConfigurations(Jenkins jenkins, PrintStream logger, boolean interrupt) {
+            final Queue q = jenkins.getQueue();
+
+            // one pass over the queue, rather than one per configuration,
+            // as SYSTEM since the items of the configurations may not be visible to the authentication of the build
+            final List<Item> items = new ArrayList<Item>();
+            try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) {
+                for (Item i : q.getItems()) {
+                    if (i.task instanceof MatrixConfiguration && activeConfigurations.contains(i.task)) {
+                        ParentBuildAction a = i.getAction(ParentBuildAction.class);
+                        if (a!=null && a.getMatrixBuild()==getBuild())
+                            items.add(i);
+                    }
+                }
+            }
+            if (!items.isEmpty()) {
+                final List<Item> cancelled = new ArrayList<Item>(items.size());
+                Queue.withLock(new Runnable() {
+                    public void run() {
+                        for (Item i : items) {
+                            if (q.cancel(i))
+                                cancelled.add(i);
                         }
                     }
+                });
+                for (Item i : cancelled)
+                    logger.println(Messages.MatrixBuild_Cancelled(ModelHyperlinkNote.encodeTo((MatrixConfiguration) i.task)));
+            }
+
+            if (!interrupt) return;
+
+            // the running ones are found on the executors, without touching the queue or loading runs
+            final int n = getNumber();
+            for (Computer c : jenkins.getComputers()) {
+                for (Executor exe : c.getAllExecutors()) {
+                    Queue.Executable e = exe.getCurrentExecutable();
+                    if (!(e instanceof MatrixRun)) continue;
+                    MatrixRun b = (MatrixRun) e;
+                    if (b.getNumber()==n && activeConfigurations.contains(b.getParent())
+                            && b.isBuilding()) {// executor can spend some time in post production state, so only cancel in-progress builds.
+                        logger.println(Messages.MatrixBuild_Interrupting(ModelHyperlinkNote.encodeTo(b)));
+                        exe.interrupt();
+                    }
                 }
             }
         }
@@ -437,8 +757,16 @@ public class MatrixBuild extends AbstractBuild<MatrixProject,MatrixBuild> {
         }
 
         public void post2(BuildListener listener) throws Exception {
-            for (MatrixAggregator a : aggregators)
-                a.endBuild();
+            MatrixAggregators.endBuild(aggregators, listener);
+        }
+
+        @Override
+        public void cleanUp(@NonNull BuildListener listener) throws Exception {
+            indexRuns(activeConfigurations != null ? activeConfigurations : Collections.<MatrixConfiguration>emptySet());
+            getProject().saveConfigurationsIndex();
+            super.cleanUp(listener);
         }
     }
+
+    private static final Logger LOGGER = Logger.getLogger(MatrixBuild.class.getName());
 }
@@ -30,6 +30,7 @@ import hudson.model.Action;
 import hudson.model.Executor;
 import hudson.model.InvisibleAction;
 import hudson.model.Node;
+import hudson.model.Queue;
 import hudson.model.Queue.QueueAction;
 import hudson.model.TaskListener;
 import hudson.util.AlternativeUiTextProvider;
@@ -498,6 +499,29 @@ public class MatrixConfiguration extends Project<MatrixConfiguration,MatrixRun>
             return false;
         }
 
+        return scheduleBuild(jenkins.getQueue(), createChildActions(actions), c);
+    }
+
+    /**
+     * Schedules the build with the actions computed by {@link #createChildActions(List)}.
+     * Those can be shared between configurations, as they are not modified by the queue.
+     */
+    /*package*/ boolean scheduleBuild(Queue q, List<Action> childActions, Cause c) {
+        List<Action> allActions = new ArrayList<Action>(childActions.size() + 1);
+        allActions.addAll(childActions);
+        // CauseAction can get other causes folded into it by the queue, so every item gets its own
+        allActions.add(new CauseAction(c));
+
+        return q.schedule2(this, getQuietPeriod(), allActions).isAccepted();
+    }
+
+    /**
+     * Actions passed to the builds of configurations scheduled from the current {@link MatrixBuild},
+     * except for the {@link CauseAction}.
+     *
+     * @param actions   Can be null.
+     */
+    /*package*/ static List<Action> createChildActions(List<? extends Action> actions) {
         List<Action> allActions = new ArrayList<Action>();
         if(actions != null) {
             for (Action a : actions) { // SECURITY-170
@@ -509,9 +533,7 @@ public class MatrixConfiguration extends Project<MatrixConfiguration,MatrixRun>
             }
         }
         allActions.add(new ParentBuildAction());
-        allActions.add(new CauseAction(c));
-
-        return jenkins.getQueue().schedule2(this, getQuietPeriod(), allActions ).isAccepted();
+        return allActions;
     }
 
     /**
@@ -0,0 +1,347 @@
+package hudson.matrix;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.model.Items;
+import hudson.util.AtomicFileWriter;
+import org.kohsuke.stapler.TokenList;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Finds and reads the {@link MatrixConfiguration}s stored in the {@code configurations} directory of a {@link MatrixProject}.
+ *
+ * <p>
+ * The directory structure would be <tt>axis-a/b/axis-c/d/axis-e/f</tt> for
+ * combination [a=b,c=d,e=f]. Note that two combinations [a=b,c=d] and [a=b,c=d,e=f]
+ * can both co-exist (where one is an archived record and the other is live, for example)
+ * so search needs to be thorough.
+ */
+final class MatrixConfigurationLoader {
+    private MatrixConfigurationLoader() {}
+
+    /**
+     * Configuration found on the disk.
+     */
+    static final class Entry {
+        final Combination combination;
+        /**
+         * Directory that contains the {@code config.xml} of the configuration.
+         */
+        final File dir;
+
+        Entry(Combination combination, File dir) {
+            this.combination = combination;
+            this.dir = dir;
+        }
+    }
+
+    /**
+     * Lists the configurations stored under the given directory, using the index file when it is up to date.
+     *
+     * <p>
+     * The index records the modification time of the directories that would change when a configuration
+     * is added or removed (the {@code configurations} directory itself, and each configuration directory
+     * along with its parents).
+     * If all of them are unchanged, the configurations listed in the index are trusted. Otherwise the directory
+     * gets scanned, and the index rewritten.
+     *
+     * @param index
+     *      File that caches the result of the scan.
+     */
+    static List<Entry> scan(File configurationsDir, File index) throws IOException {
+        List<Entry> entries = readIndex(configurationsDir, index);
+        if (entries == null) {
+            entries = scan(configurationsDir);
+            writeIndex(configurationsDir, index, entries);
+        }
+        return entries;
+    }
+
+    /**
+     * Lists the configurations stored under the given directory.
+     */
+    static List<Entry> scan(File configurationsDir) throws IOException {
+        final List<Entry> entries = new ArrayList<Entry>();
+        if (!configurationsDir.isDirectory()) {
+            return entries;
+        }
+
+        final Path root = configurationsDir.toPath();
+        Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (dir.equals(root)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                // axis-a/b/axis-c/d: odd levels are axes, even levels are their values
+                int depth = root.relativize(dir).getNameCount();
+                if (depth % 2 == 1 && !dir.getFileName().toString().startsWith("axis-")) {
+                    return FileVisitResult.SKIP_SUBTREE; // builds, workspaces, etc.
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                Path dir = file.getParent();
+                if (!dir.equals(root) && file.getFileName().toString().equals("config.xml")) {
+                    Path relative = root.relativize(dir);
+                    if (relative.getNameCount() % 2 == 0) {
+                        entries.add(new Entry(toCombination(relative), dir.toFile()));
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                LOGGER.log(Level.FINE, "Failed to look for matrix configurations in " + file, e);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return entries;
+    }
+
+    /**
+     * @return null if the index is missing, corrupted or out of date.
+     */
+    private static @CheckForNull List<Entry> readIndex(File configurationsDir, File index) {
+        if (!index.isFile()) {
+            return null;
+        }
+        try {
+            List<String> lines = Files.readAllLines(index.toPath(), StandardCharsets.UTF_8);
+            if (lines.isEmpty() || !lines.get(0).equals(INDEX_HEADER)) {
+                return null;
+            }
+            Path root = configurationsDir.toPath();
+            List<Entry> entries = new ArrayList<Entry>();
+            for (String line : lines.subList(1, lines.size())) {
+                if (line.startsWith("D ")) {
+                    // D <mtime> <directory>
+                    int sp = line.indexOf(' ', 2);
+                    long mtime = Long.parseLong(line.substring(2, sp));
+                    if (mtime < 0 || resolve(root, line.substring(sp + 1)).toFile().lastModified() != mtime) {
+                        LOGGER.log(Level.FINE, "{0} changed since {1} was written", new Object[] {line.substring(sp + 1), index});
+                        return null;
+                    }
+                } else if (line.startsWith("C ")) {
+                    // C <directory of the configuration>
+                    Path dir = resolve(root, line.substring(2));
+                    entries.add(new Entry(toCombination(root.relativize(dir)), dir.toFile()));
+                } else if (!line.isEmpty()) {
+                    return null;
+                }
+            }
+            return entries;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.FINE, "Ignoring the configuration index " + index, e);
+            return null;
+        }
+    }
+
+    /**
+     * Records the given configurations, found under the given directory, in the index file.
+     */
+    static void writeIndex(File configurationsDir, File index, Collection<Entry> entries) {
+        Path root = configurationsDir.toPath();
+        if (!configurationsDir.isDirectory()) {
+            deleteIndex(index);
+            return;
+        }
+
+        // directories whose content changes when a configuration is added or removed,
+        // including the configuration directories themselves, for config.xml and nested configurations
+        Set<String> dirs = new TreeSet<String>();
+        dirs.add(".");
+        List<String> configs = new ArrayList<String>(entries.size());
+        for (Entry e : entries) {
+            Path relative = root.relativize(e.dir.toPath());
+            configs.add(toString(relative));
+            for (int i = 1; i <= relative.getNameCount(); i++) {
+                dirs.add(toString(relative.subpath(0, i)));
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        try {
+            AtomicFileWriter w = new AtomicFileWriter(index.toPath(), StandardCharsets.UTF_8);
+            try {
+                w.write(INDEX_HEADER + "\n");
+                for (String d : dirs) {
+                    long mtime = resolve(root, d).toFile().lastModified();
+                    if (mtime == 0) {
+                        // disappeared while we were looking
+                        deleteIndex(index);
+                        return;
+                    }
+                    if (mtime % 1000 == 0 && now - mtime < 2000) {
+                        // with a coarse timestamp, a change later in the same second would go unnoticed
+                        mtime = -1;
+                    }
+                    w.write("D " + mtime + " " + d + "\n");
+                }
+                for (String c : configs) {
+                    w.write("C " + c + "\n");
+                }
+                w.commit();
+            } finally {
+                w.abort();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write the configuration index " + index, e);
+            deleteIndex(index);
+        }
+    }
+
+    private static void deleteIndex(File index) {
+        try {
+            Files.deleteIfExists(index.toPath());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to delete the configuration index " + index, e);
+        }
+    }
+
+    private static Path resolve(Path root, String relative) {
+        Path p = relative.equals(".") ? root : root.resolve(relative).normalize();
+        if (!p.startsWith(root)) {
+            throw new IllegalArgumentException(relative);
+        }
+        return p;
+    }
+
+    private static String toString(Path relative) {
+        StringBuilder b = new StringBuilder();
+        for (Path name : relative) {
+            if (b.length() > 0) b.append('/');
+            b.append(name);
+        }
+        return b.toString();
+    }
+
+    private static final String INDEX_HEADER = "# matrix configurations index v1";
+
+    /**
+     * Computes the combination of a directory like <tt>axis-a/b/axis-c/d</tt>.
+     */
+    static Combination toCombination(Path relative) {
+        Map<String,String> c = new HashMap<String,String>();
+        for (int i = 0; i + 1 < relative.getNameCount(); i += 2) {
+            String axis = relative.getName(i).toString().substring(5);    // axis name
+            c.put(axis, TokenList.decode(relative.getName(i + 1).toString()));
+        }
+        return new Combination(c);
+    }
+
+    /**
+     * Deserializes the given configurations, in parallel when there are several of them.
+     *
+     * <p>
+     * The returned configurations still need their combination set and {@code onLoad} called.
+     * Configurations that cannot be read are logged and left out.
+     */
+    static Map<Entry,MatrixConfiguration> read(Collection<Entry> entries) throws IOException {
+        Map<Entry,MatrixConfiguration> result = new LinkedHashMap<Entry,MatrixConfiguration>();
+        if (entries.size() < 2 || PARALLELISM < 2) {
+            for (Entry e : entries) {
+                try {
+                    result.put(e, read(e));
+                } catch (IOException x) {
+                    LOGGER.log(Level.WARNING, "Failed to load matrix configuration " + e.dir, x);
+                }
+            }
+            return result;
+        }
+
+        // the context class loader of the thread that loads Jenkins is the one to resolve plugin classes with
+        final ClassLoader ccl = Thread.currentThread().getContextClassLoader();
+        List<Callable<MatrixConfiguration>> tasks = new ArrayList<Callable<MatrixConfiguration>>(entries.size());
+        for (final Entry e : entries) {
+            tasks.add(new Callable<MatrixConfiguration>() {
+                public MatrixConfiguration call() throws IOException {
+                    Thread t = Thread.currentThread();
+                    ClassLoader old = t.getContextClassLoader();
+                    t.setContextClassLoader(ccl);
+                    try {
+                        return read(e);
+                    } finally {
+                        t.setContextClassLoader(old);
+                    }
+                }
+            });
+        }
+
+        List<Future<MatrixConfiguration>> futures;
+        try {
+            futures = getPool().invokeAll(tasks);
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            throw (IOException) new InterruptedIOException("Interrupted while loading matrix configurations").initCause(x);
+        }
+
+        int i = 0;
+        for (Entry e : entries) {
+            try {
+                result.put(e, futures.get(i++).get());
+            } catch (ExecutionException x) {
+                LOGGER.log(Level.WARNING, "Failed to load matrix configuration " + e.dir, x.getCause());
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+                throw (IOException) new InterruptedIOException("Interrupted while loading matrix configurations").initCause(x);
+            }
+        }
+        return result;
+    }
+
+    private static MatrixConfiguration read(Entry e) throws IOException {
+        return (MatrixConfiguration) Items.getConfigFile(e.dir).read();
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(PARALLELISM, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+                public ForkJoinWorkerThread newThread(ForkJoinPool p) {
+                    ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                    t.setName("MatrixConfigurationLoader-" + t.getPoolIndex());
+                    return t;
+                }
+            }, null, false);
+        }
+        return pool;
+    }
+
+    private static ForkJoinPool pool;
+
+    /**
+     * Maximum number of configurations deserialized at the same time.
+     */
+    private static final int PARALLELISM = Integer.getInteger(MatrixConfigurationLoader.class.getName() + ".parallelism",
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final Logger LOGGER = Logger.getLogger(MatrixConfigurationLoader.class.getName());
+}
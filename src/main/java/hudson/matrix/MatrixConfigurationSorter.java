@@ -4,6 +4,7 @@ import hudson.ExtensionPoint;
 import hudson.model.AbstractDescribableImpl;
 import hudson.util.FormValidation;
 
+import java.util.Collection;
 import java.util.Comparator;
 
 /**
@@ -29,6 +30,20 @@ public abstract class MatrixConfigurationSorter extends AbstractDescribableImpl<
      */
     public abstract void validate(MatrixProject p) throws FormValidation;
 
+    /**
+     * Gets the comparator to sort the given configurations with, for one build.
+     *
+     * <p>
+     * The order must not change while the configurations are sorted and looked up. So sorters that compare figures
+     * updated as runs complete return a comparator of those figures read once for each configuration.
+     *
+     * @return
+     *      this sorter by default.
+     */
+    public Comparator<MatrixConfiguration> snapshot(Collection<MatrixConfiguration> configurations) {
+        return this;
+    }
+
     @Override
     public MatrixConfigurationSorterDescriptor getDescriptor() {
         return (MatrixConfigurationSorterDescriptor)super.getDescriptor();
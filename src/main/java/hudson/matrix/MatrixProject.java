@@ -39,6 +39,7 @@ import hudson.matrix.MatrixBuild.MatrixBuildExecution;
 import hudson.model.AbstractProject;
 import hudson.model.Action;
 import hudson.model.BuildableItemWithBuildWrappers;
+import hudson.model.Cause;
 import hudson.model.DependencyGraph;
 import hudson.model.Descriptor;
 import hudson.model.Descriptor.FormException;
@@ -50,6 +51,7 @@ import hudson.model.Job;
 import hudson.model.Label;
 import hudson.model.ParameterDefinition;
 import hudson.model.ParametersDefinitionProperty;
+import hudson.model.Queue;
 import hudson.model.Queue.FlyweightTask;
 import hudson.model.Result;
 import hudson.model.Run;
@@ -85,13 +87,18 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 import edu.umd.cs.findbugs.annotations.Nullable;
 import jakarta.servlet.ServletException;
@@ -101,6 +108,7 @@ import javax.xml.transform.TransformerException;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
+import jenkins.model.BuildDiscarder;
 import jenkins.model.Jenkins;
 import jenkins.scm.SCMCheckoutStrategyDescriptor;
 import jenkins.util.xml.XMLUtils;
@@ -111,7 +119,6 @@ import org.kohsuke.accmod.restrictions.NoExternalUse;
 import org.kohsuke.stapler.HttpResponse;
 import org.kohsuke.stapler.StaplerRequest2;
 import org.kohsuke.stapler.StaplerResponse2;
-import org.kohsuke.stapler.TokenList;
 import org.kohsuke.stapler.export.Exported;
 import org.xml.sax.SAXException;
 
@@ -164,6 +171,23 @@ public class MatrixProject extends AbstractProject<MatrixProject,MatrixBuild> im
     @CopyOnWrite
     private transient /*final*/ Set<MatrixConfiguration> activeConfigurations = new LinkedHashSet<MatrixConfiguration>();
 
+    /**
+     * Inactive configurations found on disk but not read yet, see {@link #LAZY_LOAD_INACTIVE_CONFIGURATIONS}.
+     */
+    @CopyOnWrite
+    private transient volatile Map<Combination,File> deferredConfigurations = Collections.emptyMap();
+
+    /**
+     * What {@link #activeConfigurations} were last computed from, so that
+     * {@link #rebuildConfigurations(MatrixBuildExecution)} can skip the work when nothing changed.
+     */
+    private transient volatile RebuildKey lastRebuild;
+
+    /**
+     * See {@link #getConfigurationStatistics()}.
+     */
+    private transient /*final*/ ConfigurationStatistics statistics = new ConfigurationStatistics(this);
+
     /**
      * @deprecated as of 1.456
      *      Moved to {@link DefaultMatrixExecutionStrategyImpl}
@@ -224,8 +248,19 @@ public class MatrixProject extends AbstractProject<MatrixProject,MatrixBuild> im
         super(parent, name);
     }
 
+    /**
+     * Guards the updates of {@link #configurations} and {@link #deferredConfigurations} when configurations are loaded,
+     * so that a configuration being loaded on demand is neither lost nor deferred again by a concurrent rebuild.
+     * Also orders the writes of {@link #getConfigurationsIndexFile()}.
+     */
+    private transient @NonNull Object deferredLoadLock = new Object();
+
     protected Object readResolve() {
         buildLock = new ReentrantLock();
+        deferredLoadLock = new Object();
+        deferredConfigurations = Collections.emptyMap();
+        lastRebuild = null;
+        statistics = new ConfigurationStatistics(this);
         return this;
     }
 
@@ -509,6 +544,27 @@ public class MatrixProject extends AbstractProject<MatrixProject,MatrixBuild> im
             protected MatrixConfiguration getT(Combination c) {
                 return getItem(c);
             }
+
+            @Override
+            protected boolean fill(Cells cells) {
+                if (configurations == null) {
+                    return false;
+                }
+                // the table may show inactive configurations that have not been loaded yet
+                List<Combination> deferred = new ArrayList<Combination>();
+                for (Combination c : deferredConfigurations.keySet()) {
+                    if (cells.indexOf(c) >= 0)
+                        deferred.add(c);
+                }
+                loadDeferredConfigurations(deferred);
+
+                for (MatrixConfiguration c : configurations.values()) {
+                    int i = cells.indexOf(c.getCombination());
+                    if (i >= 0)
+                        cells.set(i, c);
+                }
+                return true;
+            }
         };
     }
 
@@ -528,80 +584,124 @@ public class MatrixProject extends AbstractProject<MatrixProject,MatrixBuild> im
         if (executionStrategy ==null)
             executionStrategy = new DefaultMatrixExecutionStrategyImpl(runSequentially != null ? runSequentially : false, touchStoneCombinationFilter, touchStoneResultCondition, sorter);
 
+        // what is on the disk may have changed
+        lastRebuild = null;
         rebuildConfigurations(null);
     }
 
     @Override
     public void logRotate() throws IOException, InterruptedException {
         super.logRotate();
-        // perform the log rotation of inactive configurations to make sure
-        // their logs get eventually discarded
-        for (MatrixConfiguration config : configurations.values()) {
-            if(!config.isActiveConfiguration())
+        // the builds of this project are listed once for all the configurations, rather than looked up for each of their runs
+        SortedSet<Integer> builds = LinkedLogRotator.getBuildNumbers(this);
+        for (MatrixConfiguration config : getItems()) {
+            if (config.isActiveConfiguration()) {
+                // drop the runs of the builds that were just discarded
+                LinkedLogRotator.deleteOrphanedRuns(config, builds);
+                continue;
+            }
+            // perform the log rotation of inactive configurations to make sure
+            // their logs get eventually discarded
+            BuildDiscarder bd = config.getBuildDiscarder();
+            if (bd instanceof LinkedLogRotator) {
+                ((LinkedLogRotator) bd).perform(config, builds);
+            } else {
                 config.logRotate();
+            }
         }
     }
 
     /**
-     * Recursively search for configuration and put them to the map
+     * Loads the configurations stored on disk into {@link #configurations}.
      *
-     * <p>
-     * The directory structure would be <tt>axis-a/b/axis-c/d/axis-e/f</tt> for
-     * combination [a=b,c=d,e=f]. Note that two combinations [a=b,c=d] and [a=b,c=d,e=f]
-     * can both co-exist (where one is an archived record and the other is live, for example)
-     * so search needs to be thorough.
-     *
-     * @param dir
-     *      Directory to be searched.
-     * @param result
-     *      Receives the loaded {@link MatrixConfiguration}s.
-     * @param combination
-     *      Combination of key/values discovered so far while traversing the directories.
-     *      Read-only.
+     * @param active
+     *      Combinations that will be active. Unless they are already in memory, the others are only
+     *      read from disk right away when {@link #LAZY_LOAD_INACTIVE_CONFIGURATIONS} is off.
+     * @see MatrixConfigurationLoader
      */
-    private void loadConfigurations( File dir, CopyOnWriteMap.Tree<Combination,MatrixConfiguration> result, Map<String,String> combination ) {
-        File[] axisDirs = dir.listFiles(new FileFilter() {
-            public boolean accept(File child) {
-                return child.isDirectory() && child.getName().startsWith("axis-");
+    private void loadConfigurations(Set<Combination> active) throws IOException {
+        synchronized (deferredLoadLock) {
+            Map<Combination,MatrixConfiguration> current = this.configurations;
+
+            Map<Combination,MatrixConfiguration> loaded = new TreeMap<Combination,MatrixConfiguration>();
+            Map<Combination,File> stillDeferred = new HashMap<Combination,File>();
+            List<MatrixConfigurationLoader.Entry> toRead = new ArrayList<MatrixConfigurationLoader.Entry>();
+            for (MatrixConfigurationLoader.Entry e : MatrixConfigurationLoader.scan(getConfigurationsDir(), getConfigurationsIndexFile())) {
+                // if we already have this in memory, just use it.
+                // otherwise load it
+                MatrixConfiguration item = current != null ? current.get(e.combination) : null;
+                if (item != null) {
+                    loaded.put(item.getCombination(), item);
+                } else if (LAZY_LOAD_INACTIVE_CONFIGURATIONS && !active.contains(e.combination)) {
+                    stillDeferred.put(e.combination, e.dir);
+                } else {
+                    toRead.add(e);
+                }
+            }
+            if (!stillDeferred.isEmpty()) {
+                LOGGER.log(Level.FINE, "Deferring the load of {0} inactive configurations of {1}", new Object[] {stillDeferred.size(), this});
             }
-        });
-        if(axisDirs==null)      return;
 
-        for (File subdir : axisDirs) {
-            String axis = subdir.getName().substring(5);    // axis name
+            loaded.putAll(completeLoad(MatrixConfigurationLoader.read(toRead)));
 
-            File[] valuesDir = subdir.listFiles(new FileFilter() {
-                public boolean accept(File child) {
-                    return child.isDirectory();
+            if (current instanceof CopyOnWriteMap.Tree) {
+                // leave the map alone if nothing changed, to spare the copy
+                if (!current.equals(loaded)) {
+                    ((CopyOnWriteMap.Tree<Combination,MatrixConfiguration>) current).replaceBy(loaded);
                 }
-            });
-            if(valuesDir==null) continue;   // no values here
+            } else {
+                CopyOnWriteMap.Tree<Combination,MatrixConfiguration> configurations = new CopyOnWriteMap.Tree<Combination,MatrixConfiguration>();
+                configurations.replaceBy(loaded);
+                this.configurations = configurations;
+            }
+            this.deferredConfigurations = stillDeferred.isEmpty() ? Collections.<Combination,File>emptyMap() : stillDeferred;
+        }
+    }
 
-            for (File v : valuesDir) {
-                Map<String,String> c = new HashMap<String, String>(combination);
-                c.put(axis,TokenList.decode(v.getName()));
+    /**
+     * Completes the loading of configurations read by {@link MatrixConfigurationLoader}.
+     */
+    private Map<Combination,MatrixConfiguration> completeLoad(Map<MatrixConfigurationLoader.Entry,MatrixConfiguration> read) {
+        Map<Combination,MatrixConfiguration> result = new HashMap<Combination,MatrixConfiguration>();
+        for (Map.Entry<MatrixConfigurationLoader.Entry,MatrixConfiguration> e : read.entrySet()) {
+            MatrixConfiguration item = e.getValue();
+            try {
+                item.setCombination(e.getKey().combination);
+                item.onLoad(this, e.getKey().dir.getName());
+                result.put(item.getCombination(), item);
+            } catch (IOException x) {
+                LOGGER.log(Level.WARNING, "Failed to load matrix configuration "+e.getKey().dir,x);
+            }
+        }
+        return result;
+    }
 
-                try {
-                    XmlFile config = Items.getConfigFile(v);
-                    if(config.exists()) {
-                        Combination comb = new Combination(c);
-                        // if we already have this in memory, just use it.
-                        // otherwise load it
-                        MatrixConfiguration item=null;
-                        if(this.configurations!=null)
-                            item = this.configurations.get(comb);
-                        if(item==null) {
-                            item = (MatrixConfiguration) config.read();
-                            item.setCombination(comb);
-                            item.onLoad(this, v.getName());
-                        }
-                        result.put(item.getCombination(), item);
-                    }
-                } catch (IOException e) {
-                    LOGGER.log(Level.WARNING, "Failed to load matrix configuration "+v,e);
+    /**
+     * Reads the configurations whose load has been deferred.
+     *
+     * @param combinations
+     *      Combinations to load, or null to load all of them.
+     */
+    private void loadDeferredConfigurations(@CheckForNull Collection<Combination> combinations) {
+        if (deferredConfigurations.isEmpty()) return;
+
+        synchronized (deferredLoadLock) {
+            Map<Combination,File> deferred = new HashMap<Combination,File>(deferredConfigurations);
+            List<MatrixConfigurationLoader.Entry> toRead = new ArrayList<MatrixConfigurationLoader.Entry>();
+            for (Combination c : combinations != null ? combinations : new ArrayList<Combination>(deferred.keySet())) {
+                File dir = deferred.remove(c);
+                if (dir != null) {
+                    toRead.add(new MatrixConfigurationLoader.Entry(c, dir));
                 }
-                loadConfigurations(v,result,c);
             }
+            if (toRead.isEmpty()) return;
+
+            try {
+                configurations.putAll(completeLoad(MatrixConfigurationLoader.read(toRead)));
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to load the inactive configurations of " + this, e);
+            }
+            deferredConfigurations = deferred;
         }
     }
 
@@ -614,6 +714,21 @@ public class MatrixProject extends AbstractProject<MatrixProject,MatrixBuild> im
      *      build in progress. Otherwise this value is null (for example, when Jenkins is booting up.)
      */
     /*package*/ Set<MatrixConfiguration> rebuildConfigurations(MatrixBuildExecution context) throws IOException {
+        final AxisList axes = this.axes;
+        List<List<String>> axesValues = Lists.newArrayList();
+        for (Axis axis : axes)
+            axesValues.add(new ArrayList<String>(Sets.newLinkedHashSet(context != null ? axis.rebuild(context) : axis.getValues())));
+
+        final String combinationFilter = getCombinationFilter();
+        final boolean isDynamicFilter = isDynamicFilter(combinationFilter);
+
+        // same axes and filter as last time, so the same configurations would be picked
+        RebuildKey key = new RebuildKey(axes, axesValues, combinationFilter, isDynamicFilter);
+        Set<MatrixConfiguration> lastActive = this.activeConfigurations;
+        if (key.equals(lastRebuild) && isLoaded(lastActive)) {
+            return lastActive;
+        }
+
         {
             // backward compatibility check to see if there's any data in the old structure
             // if so, bring them to the newer structure.
@@ -639,49 +754,100 @@ public class MatrixProject extends AbstractProject<MatrixProject,MatrixBuild> im
             }
         }
 
-        CopyOnWriteMap.Tree<Combination,MatrixConfiguration> configurations =
-            new CopyOnWriteMap.Tree<Combination,MatrixConfiguration>();
-        loadConfigurations(getConfigurationsDir(),configurations,Collections.<String,String>emptyMap());
-        this.configurations = configurations;
-
-        Iterable<Combination> activeCombinations;
-        if (context!=null) {
-            List<Set<String>> axesList = Lists.newArrayList();
-            for (Axis axis : axes)
-                axesList.add(Sets.newLinkedHashSet(axis.rebuild(context)));
-
-            activeCombinations = Iterables.transform(Sets.cartesianProduct(axesList), new Function<List<String>, Combination>() {
-                public Combination apply(@Nullable List<String> strings) {
-                    assert strings != null;
-                    return new Combination(axes, strings);
-                }
-            });
-        } else {
-            activeCombinations = axes.list();
+        List<Set<String>> axesList = Lists.newArrayList();
+        for (List<String> values : axesValues)
+            axesList.add(new LinkedHashSet<String>(values));
+
+        Iterable<Combination> activeCombinations = Iterables.transform(Sets.cartesianProduct(axesList), new Function<List<String>, Combination>() {
+            public Combination apply(@Nullable List<String> strings) {
+                assert strings != null;
+                return new Combination(axes, strings);
+            }
+        });
+
+        // find all active combinations
+        final Set<Combination> filtered = new LinkedHashSet<Combination>();
+
+        for (Combination c : activeCombinations) {
+            if(isDynamicFilter || c.evalGroovyExpression(axes,combinationFilter)) {
+                filtered.add(c);
+            }
         }
 
+        loadConfigurations(filtered);
+        Map<Combination,MatrixConfiguration> configurations = this.configurations;
+
         // find all active configurations
         final Set<MatrixConfiguration> active = new LinkedHashSet<MatrixConfiguration>();
-        final boolean isDynamicFilter = isDynamicFilter(getCombinationFilter());
-
-        for (Combination c : activeCombinations) {
-            if(isDynamicFilter || c.evalGroovyExpression(axes,getCombinationFilter())) {
-        		LOGGER.fine("Adding configuration: " + c);
-	            MatrixConfiguration config = configurations.get(c);
-	            if(config==null) {
-	                config = new MatrixConfiguration(this,c);
-                    config.onCreatedFromScratch();
-	                config.save();
-	                configurations.put(config.getCombination(), config);
-	            }
-	            active.add(config);
-        	}
+        boolean created = false;
+        for (Combination c : filtered) {
+            LOGGER.fine("Adding configuration: " + c);
+            MatrixConfiguration config = configurations.get(c);
+            if(config==null) {
+                config = new MatrixConfiguration(this,c);
+                config.onCreatedFromScratch();
+                config.save();
+                configurations.put(config.getCombination(), config);
+                created = true;
+            }
+            active.add(config);
         }
         this.activeConfigurations = active;
+        this.lastRebuild = key;
+        if (created) {
+            saveConfigurationsIndex();
+        }
 
         return active;
     }
 
+    /**
+     * Checks that the given configurations are still the ones held in {@link #configurations}.
+     */
+    private boolean isLoaded(Set<MatrixConfiguration> configs) {
+        Map<Combination,MatrixConfiguration> configurations = this.configurations;
+        if (configurations == null) return false;
+        for (MatrixConfiguration c : configs) {
+            if (configurations.get(c.getCombination()) != c) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Everything {@link #rebuildConfigurations(MatrixBuildExecution)} decides the active configurations from.
+     */
+    private static final class RebuildKey {
+        private final AxisList axes;
+        private final List<String> names;
+        private final List<List<String>> values;
+        private final String combinationFilter;
+        private final boolean isDynamicFilter;
+
+        RebuildKey(AxisList axes, List<List<String>> values, String combinationFilter, boolean isDynamicFilter) {
+            this.axes = axes;
+            this.names = new ArrayList<String>(axes.size());
+            for (Axis a : axes)
+                names.add(a.getName());
+            this.values = values;
+            this.combinationFilter = combinationFilter;
+            this.isDynamicFilter = isDynamicFilter;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof RebuildKey)) return false;
+            RebuildKey that = (RebuildKey) o;
+            // reconfiguring the project replaces the axes, and always recomputes everything
+            return axes == that.axes && isDynamicFilter == that.isDynamicFilter && names.equals(that.names)
+                    && values.equals(that.values) && Objects.equals(combinationFilter, that.combinationFilter);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(names, values, combinationFilter);
+        }
+    }
+
     /**
      * Configuration for matrix build
      */
@@ -700,8 +866,8 @@ public class MatrixProject extends AbstractProject<MatrixProject,MatrixBuild> im
             // give axes a chance to rebuild themselves
             runConfig.config = rebuildConfigurations(context);
 
-            // deep copy the axes
-            runConfig.axisList = (AxisList) Jenkins.XSTREAM.fromXML(Jenkins.XSTREAM.toXML(axes));
+            // copy the axes, so that the build is not affected by later changes
+            runConfig.axisList = axes.snapshot();
         } finally {
             buildLock.unlock();
         }
@@ -733,6 +899,42 @@ public class MatrixProject extends AbstractProject<MatrixProject,MatrixBuild> im
         return new File(getRootDir(),"configurations");
     }
 
+    /**
+     * File that lists the configurations found in {@link #getConfigurationsDir()}, so that it doesn't have to be scanned every time.
+     *
+     * @see MatrixConfigurationLoader#scan(File, File)
+     */
+    private File getConfigurationsIndexFile() {
+        return new File(getRootDir(),"configurations.index");
+    }
+
+    /**
+     * Figures about the configurations that {@link MatrixConfigurationSorter}s can use without loading builds.
+     */
+    /*package*/ ConfigurationStatistics getConfigurationStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Records the configurations currently known, loaded or not, in {@link #getConfigurationsIndexFile()}.
+     *
+     * <p>
+     * Also called when a build is done, as the runs touch the directories of their configurations.
+     */
+    /*package*/ void saveConfigurationsIndex() {
+        // one at a time, so that the last one written is also the most recent
+        synchronized (deferredLoadLock) {
+            List<MatrixConfigurationLoader.Entry> entries = new ArrayList<MatrixConfigurationLoader.Entry>();
+            for (MatrixConfiguration c : configurations.values()) {
+                entries.add(new MatrixConfigurationLoader.Entry(c.getCombination(), c.getRootDir()));
+            }
+            for (Map.Entry<Combination,File> e : deferredConfigurations.entrySet()) {
+                entries.add(new MatrixConfigurationLoader.Entry(e.getKey(), e.getValue()));
+            }
+            MatrixConfigurationLoader.writeIndex(getConfigurationsDir(), getConfigurationsIndexFile(), entries);
+        }
+    }
+
     /**
      * Gets all active configurations.
      *
@@ -751,6 +953,7 @@ public class MatrixProject extends AbstractProject<MatrixProject,MatrixBuild> im
     }
 
     public Collection<MatrixConfiguration> getItems() {
+        loadDeferredConfigurations(null);
         return configurations.values();
     }
 
@@ -777,7 +980,46 @@ public class MatrixProject extends AbstractProject<MatrixProject,MatrixBuild> im
         if (configurations == null) {
             return null;
         }
-        return configurations.get(c);
+        MatrixConfiguration item = configurations.get(c);
+        if (item == null && deferredConfigurations.containsKey(c)) {
+            loadDeferredConfigurations(Collections.singleton(c));
+            item = configurations.get(c);
+        }
+        return item;
+    }
+
+    /**
+     * Schedules the builds of several configurations at once, from the {@link MatrixBuild} that is currently running.
+     *
+     * <p>
+     * This has the same effect as calling {@link MatrixConfiguration#scheduleBuild(List, Cause)} on each of them,
+     * but the queue gets locked only once and the actions passed to the configurations are computed only once.
+     *
+     * @param actions   Can be null.
+     * @param c     Reason for starting the builds
+     * @return the configurations that have been scheduled
+     */
+    public List<MatrixConfiguration> scheduleConfigurations(final Collection<MatrixConfiguration> configurations, List<? extends Action> actions, final Cause c) {
+        final List<MatrixConfiguration> scheduled = new ArrayList<MatrixConfiguration>(configurations.size());
+        final Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            LOGGER.log(Level.WARNING, "Cannot schedule the configurations of {0}. Jenkins is not ready", this);
+            return scheduled;
+        }
+
+        final List<Action> childActions = MatrixConfiguration.createChildActions(actions);
+        final Queue q = jenkins.getQueue();
+        Queue.withLock(new Runnable() {
+            @Override
+            public void run() {
+                for (MatrixConfiguration conf : configurations) {
+                    if (conf.scheduleBuild(q, childActions, c)) {
+                        scheduled.add(conf);
+                    }
+                }
+            }
+        });
+        return scheduled;
     }
 
     /**
@@ -801,6 +1043,7 @@ public class MatrixProject extends AbstractProject<MatrixProject,MatrixBuild> im
         }
         else{
             configurations.remove(item.getCombination());
+            saveConfigurationsIndex();
         }
     }
 
@@ -1040,7 +1283,7 @@ public class MatrixProject extends AbstractProject<MatrixProject,MatrixBuild> im
     @Override
     public HttpResponse doDoWipeOutWorkspace() throws IOException, InterruptedException {
         HttpResponse rsp = super.doDoWipeOutWorkspace();
-        for (MatrixConfiguration c : configurations.values())
+        for (MatrixConfiguration c : getItems())
             c.doDoWipeOutWorkspace();
         return rsp;
     }
@@ -1148,6 +1391,14 @@ public class MatrixProject extends AbstractProject<MatrixProject,MatrixBuild> im
         }
     }
 
+    /**
+     * If true, inactive configurations found on disk are only read when first accessed
+     * (for example to browse their past builds or to rotate their logs), which makes loading the project faster.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "Can be changed in the runtime by Groovy scripts")
+    @Restricted(NoExternalUse.class)
+    public static boolean LAZY_LOAD_INACTIVE_CONFIGURATIONS = Boolean.getBoolean(MatrixProject.class.getName()+".lazyLoadInactiveConfigurations");
+
     private static final Logger LOGGER = Logger.getLogger(MatrixProject.class.getName());
 
     @Initializer(before=InitMilestone.EXTENSIONS_AUGMENTED)
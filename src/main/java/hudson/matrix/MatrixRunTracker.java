@@ -0,0 +1,301 @@
+package hudson.matrix;
+
+import hudson.Extension;
+import hudson.console.ModelHyperlinkNote;
+import hudson.matrix.MatrixConfiguration.ParentBuildAction;
+import hudson.model.BuildListener;
+import hudson.model.Queue;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.model.queue.CauseOfBlockage;
+import hudson.model.queue.QueueListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Follows the {@link MatrixRun}s of one {@link MatrixBuild} as they start, complete or get cancelled.
+ *
+ * <p>
+ * {@link RunListener} and {@link QueueListener} events wake up the waiting {@link MatrixBuild} as soon as
+ * any of its configurations is done, so that it can handle them in the order they complete instead of
+ * polling each {@link MatrixConfiguration} in turn. The state of the pending configurations is still
+ * re-checked every {@link #RECHECK_INTERVAL} milliseconds, in case an event gets missed.
+ *
+ * <p>
+ * Except for the event callbacks, this class is meant to be used from the thread that runs the {@link MatrixBuild}.
+ */
+final class MatrixRunTracker {
+    /**
+     * Trackers of the ongoing builds, keyed by {@link #key(MatrixProject, int)}.
+     */
+    private static final Map<String,MatrixRunTracker> TRACKERS = new ConcurrentHashMap<String,MatrixRunTracker>();
+
+    private final MatrixBuild build;
+    private final BuildListener listener;
+    private final @CheckForNull String key;
+
+    /**
+     * Configurations whose state might have changed since they were last looked at.
+     */
+    private final BlockingQueue<MatrixConfiguration> signals = new LinkedBlockingQueue<MatrixConfiguration>();
+
+    /**
+     * Configurations whose queue item got cancelled before it started.
+     */
+    private final Set<MatrixConfiguration> cancelled = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Configurations whose {@link MatrixRun} has started.
+     */
+    private final Set<MatrixConfiguration> started = ConcurrentHashMap.newKeySet();
+
+    /**
+     * When each configuration was handed to the queue, to decide when it is worth reporting why it is still waiting.
+     */
+    private final Map<MatrixConfiguration,Long> scheduledAt = new HashMap<MatrixConfiguration,Long>();
+    private final Map<MatrixConfiguration,String> whyInQueue = new HashMap<MatrixConfiguration,String>();
+    private final Map<MatrixConfiguration,Integer> appearsCancelledCount = new HashMap<MatrixConfiguration,Integer>();
+    private long lastRecheck = System.currentTimeMillis();
+
+    private MatrixRunTracker(MatrixBuild build, BuildListener listener, String key) {
+        this.build = build;
+        this.listener = listener;
+        this.key = key;
+    }
+
+    /**
+     * Starts tracking the child runs of the given build. Needs to be {@link #close() closed} when the build is done.
+     */
+    static MatrixRunTracker open(@NonNull MatrixBuild build, @NonNull BuildListener listener) {
+        MatrixRunTracker t = new MatrixRunTracker(build, listener, build.getExternalizableId());
+        if (t.key != null) {
+            TRACKERS.put(t.key, t);
+        }
+        return t;
+    }
+
+    /**
+     * Stops receiving events for this build.
+     */
+    void close() {
+        if (key != null) {
+            TRACKERS.remove(key, this);
+        }
+    }
+
+    /**
+     * Notes that the given configuration is about to be scheduled, and that its completion should be waited for.
+     */
+    void expect(MatrixConfiguration c) {
+        scheduledAt.put(c, System.currentTimeMillis());
+        // look at it at least once, in case it is done before we hear about it
+        signals.offer(c);
+    }
+
+    /**
+     * Blocks until one of the given configurations is done, either because its {@link MatrixRun} completed
+     * or because it got cancelled before it even started.
+     *
+     * @param pending
+     *      Configurations that have been scheduled for this build and not yet reported as done. Never empty.
+     */
+    @NonNull Completion awaitCompletion(Collection<MatrixConfiguration> pending) throws InterruptedException {
+        Completion done;
+        do {
+            done = await(pending, Long.MAX_VALUE, false);
+        } while (done == null);
+        return done;
+    }
+
+    /**
+     * Like {@link #awaitCompletion(Collection)}, but also returns without a completion when the given time
+     * has elapsed, or when one of the pending configurations starts running.
+     *
+     * @return null if no configuration is done yet.
+     */
+    @CheckForNull Completion awaitCompletionOrStart(Collection<MatrixConfiguration> pending, long timeout) throws InterruptedException {
+        return await(pending, System.currentTimeMillis() + timeout, true);
+    }
+
+    private @CheckForNull Completion await(Collection<MatrixConfiguration> pending, long deadline, boolean returnOnStart) throws InterruptedException {
+        while (true) {
+            long now = System.currentTimeMillis();
+            if (now - lastRecheck >= RECHECK_INTERVAL) {
+                lastRecheck = now;
+                for (MatrixConfiguration c : new ArrayList<MatrixConfiguration>(pending)) {
+                    Completion done = recheck(c);
+                    if (done != null) return done;
+                }
+                continue;
+            }
+
+            long wait = Math.min(lastRecheck + RECHECK_INTERVAL, deadline) - now;
+            if (wait <= 0) return null;
+            MatrixConfiguration c = signals.poll(wait, TimeUnit.MILLISECONDS);
+            if (c != null && pending.contains(c)) {
+                Completion done = check(c);
+                if (done != null) return done;
+                if (returnOnStart && started.contains(c)) return null;
+            }
+        }
+    }
+
+    /**
+     * Checks if the {@link MatrixRun} of the given configuration has started, as far as the events tell.
+     */
+    boolean isStarted(MatrixConfiguration c) {
+        return started.contains(c);
+    }
+
+    /**
+     * Checks if the configuration is done, based on what we know about it.
+     */
+    private @CheckForNull Completion check(MatrixConfiguration c) {
+        MatrixRun b = c.getBuildByNumber(build.getNumber());
+        // two ways to get beyond this. one is that the build starts and gets done,
+        // or the build gets cancelled before it even started.
+        if (b != null) {
+            return !b.isBuilding() && b.getResult() != null ? new Completion(c, b) : null;
+        }
+        return cancelled.contains(c) ? new Completion(c, null) : null;
+    }
+
+    /**
+     * Periodic check of a pending configuration that does not rely on events.
+     */
+    private @CheckForNull Completion recheck(MatrixConfiguration c) {
+        Completion done = check(c);
+        if (done != null) return done;
+
+        MatrixRun b = c.getBuildByNumber(build.getNumber());
+        Queue.Item qi = c.getQueueItem();
+        if (b == null && qi == null) {
+            Integer count = appearsCancelledCount.get(c);
+            count = count == null ? 1 : count + 1;
+            appearsCancelledCount.put(c, count);
+            if (count >= APPEARS_CANCELLED_RECHECKS) {
+                // there's conceivably a race condition in computing b and qi, as their computation
+                // are not synchronized. There are indeed several reports of Hudson incorrectly assuming
+                // builds being cancelled. See
+                // http://www.nabble.com/Master-slave-problem-tt14710987.html and also
+                // http://www.nabble.com/Anyone-using-AccuRev-plugin--tt21634577.html#a21671389
+                // because of this, we really make sure that the build is cancelled by seeing it
+                // gone over several checks
+                listener.getLogger().println(Messages.MatrixBuild_AppearsCancelled(ModelHyperlinkNote.encodeTo(c)));
+                return new Completion(c, null);
+            }
+        } else {
+            appearsCancelledCount.remove(c);
+        }
+
+        if (qi != null) {
+            // if the build seems to be stuck in the queue, display why
+            String why = qi.getWhy();
+            Long since = scheduledAt.get(c);
+            if (why != null && !why.equals(whyInQueue.get(c)) && (since == null || System.currentTimeMillis() - since > 5000)) {
+                // fix race condition and prevent NPE when resource gets out of the queue between getWhy() and causeOfBlockage()
+                CauseOfBlockage cause = qi.getCauseOfBlockage();
+                if (cause != null) {
+                    listener.getLogger().print("Configuration " + ModelHyperlinkNote.encodeTo(c) + " is still in the queue: ");
+                    cause.print(listener); //this is still shown on the same line
+                    whyInQueue.put(c, why);
+                }
+            }
+        }
+        return null;
+    }
+
+    private void signal(MatrixConfiguration c) {
+        signals.offer(c);
+    }
+
+    private static String key(MatrixProject p, int number) {
+        // same as Run.getExternalizableId() of the MatrixBuild
+        return p.getFullName() + '#' + number;
+    }
+
+    private static @CheckForNull MatrixRunTracker of(MatrixRun r) {
+        if (TRACKERS.isEmpty()) return null;
+        return TRACKERS.get(key(r.getParent().getParent(), r.getNumber()));
+    }
+
+    /**
+     * Configuration that is done, along with its run.
+     */
+    static final class Completion {
+        final @NonNull MatrixConfiguration configuration;
+        /**
+         * Null if the configuration got cancelled before it started.
+         */
+        final @CheckForNull MatrixRun run;
+
+        Completion(@NonNull MatrixConfiguration configuration, @CheckForNull MatrixRun run) {
+            this.configuration = configuration;
+            this.run = run;
+        }
+    }
+
+    /**
+     * How often to re-check the pending configurations regardless of the events, in milliseconds.
+     */
+    static final long RECHECK_INTERVAL = Long.getLong(MatrixRunTracker.class.getName() + ".recheckInterval", 5000);
+
+    /**
+     * How many re-checks in a row need to find neither a queue item nor a run before a configuration
+     * is considered cancelled.
+     */
+    private static final int APPEARS_CANCELLED_RECHECKS = 2;
+
+    @Extension
+    public static final class RunListenerImpl extends RunListener<MatrixRun> {
+        @Override
+        public void onStarted(MatrixRun r, TaskListener listener) {
+            MatrixRunTracker t = of(r);
+            if (t != null) {
+                t.started.add(r.getParent());
+                t.signal(r.getParent());
+            }
+        }
+
+        @Override
+        public void onCompleted(MatrixRun r, @NonNull TaskListener listener) {
+            MatrixRunTracker t = of(r);
+            if (t != null) t.signal(r.getParent());
+        }
+
+        @Override
+        public void onFinalized(MatrixRun r) {
+            MatrixRunTracker t = of(r);
+            if (t != null) t.signal(r.getParent());
+        }
+    }
+
+    @Extension
+    public static final class QueueListenerImpl extends QueueListener {
+        @Override
+        public void onLeft(Queue.LeftItem li) {
+            if (!li.isCancelled() || !(li.task instanceof MatrixConfiguration) || TRACKERS.isEmpty()) return;
+
+            ParentBuildAction a = li.getAction(ParentBuildAction.class);
+            MatrixBuild parent = a != null ? a.getMatrixBuild() : null;
+            if (parent == null) return;
+
+            MatrixRunTracker t = TRACKERS.get(key(parent.getParent(), parent.getNumber()));
+            if (t != null) {
+                MatrixConfiguration c = (MatrixConfiguration) li.task;
+                t.cancelled.add(c);
+                t.signal(c);
+            }
+        }
+    }
+}
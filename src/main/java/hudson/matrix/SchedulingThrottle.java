@@ -0,0 +1,173 @@
+package hudson.matrix;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.model.Computer;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.slaves.NodeProvisioner;
+import hudson.slaves.NodeProvisioner.PlannedNode;
+import jenkins.model.Jenkins;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decides how many configurations of a matrix build can be put into the queue, based on what the
+ * executors of their label can take right now.
+ *
+ * <p>
+ * Each label gets a window of configurations that are scheduled but not yet started. The window is the number of
+ * idle executors, minus the items of other builds already waiting for them, plus the nodes being provisioned,
+ * plus {@link #PROVISIONING_HEADROOM} when a cloud can provision more. At least one configuration per label
+ * is always allowed to wait, so that clouds see the demand and nothing starves.
+ *
+ * <p>
+ * The executors are looked at once per label for each {@link #reset}, so that filling the queue stays cheap.
+ */
+final class SchedulingThrottle {
+    private final MatrixRunTracker tracker;
+
+    /**
+     * Label of each configuration, which can be costly to compute for label expression axes.
+     */
+    private final Map<MatrixConfiguration,Label> labels = new HashMap<MatrixConfiguration,Label>();
+
+    /**
+     * Configurations of this build that are scheduled but have not started yet, per label.
+     */
+    private final Map<Label,Integer> waiting = new HashMap<Label,Integer>();
+
+    /**
+     * Number of configurations that the label can take, per label, computed on demand.
+     */
+    private final Map<Label,Integer> windows = new HashMap<Label,Integer>();
+
+    SchedulingThrottle(MatrixRunTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    /**
+     * Starts a new round of scheduling, given the configurations that are scheduled and not completed.
+     */
+    void reset(Collection<MatrixConfiguration> pending) {
+        waiting.clear();
+        windows.clear();
+        for (MatrixConfiguration c : pending) {
+            if (!tracker.isStarted(c)) {
+                Label l = getLabel(c);
+                Integer n = waiting.get(l);
+                waiting.put(l, n == null ? 1 : n + 1);
+            }
+        }
+    }
+
+    /**
+     * Checks if the given configuration can be scheduled now, and if so counts it as waiting.
+     */
+    boolean tryAcquire(MatrixConfiguration c) {
+        Label l = getLabel(c);
+        Integer n = waiting.get(l);
+        int w = n == null ? 0 : n;
+        if (w > 0 && w >= getWindow(l, w)) {
+            return false;
+        }
+        waiting.put(l, w + 1);
+        return true;
+    }
+
+    private @CheckForNull Label getLabel(MatrixConfiguration c) {
+        if (!labels.containsKey(c)) {
+            labels.put(c, c.getAssignedLabel());
+        }
+        return labels.get(c);
+    }
+
+    private int getWindow(@CheckForNull Label l, int ownWaiting) {
+        Integer w = windows.get(l);
+        if (w == null) {
+            w = computeWindow(l, ownWaiting);
+            windows.put(l, w);
+        }
+        return w;
+    }
+
+    private static int computeWindow(@CheckForNull Label l, int ownWaiting) {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            return 1;
+        }
+
+        int idle;
+        NodeProvisioner provisioner;
+        boolean provisionable;
+        if (l != null) {
+            idle = l.getIdleExecutors();
+            provisioner = l.nodeProvisioner;
+            provisionable = !l.getClouds().isEmpty();
+        } else {
+            idle = 0;
+            for (Computer c : jenkins.getComputers()) {
+                Node n = c.getNode();
+                if (n != null && n.getMode() == Node.Mode.NORMAL && c.isOnline() && c.isAcceptingTasks()) {
+                    idle += c.countIdle();
+                }
+            }
+            provisioner = jenkins.unlabeledNodeProvisioner;
+            provisionable = !jenkins.clouds.isEmpty();
+        }
+
+        int launching = 0;
+        for (PlannedNode p : provisioner.getPendingLaunches()) {
+            launching += p.numExecutors;
+        }
+
+        // what our own configurations are waiting for is already accounted in ownWaiting
+        int othersWaiting = Math.max(0, countBuildableItemsFor(l) - ownWaiting);
+
+        int window = idle - othersWaiting + launching;
+        if (provisionable) {
+            window += PROVISIONING_HEADROOM;
+        }
+        return Math.max(1, window);
+    }
+
+    /**
+     * Counts the buildable items waiting for the given label.
+     * Unlike {@link Queue#countBuildableItemsFor(Label)}, no label only counts the unlabeled items,
+     * as labeled ones wait for their own nodes.
+     */
+    private static int countBuildableItemsFor(@CheckForNull Label l) {
+        Queue q = Queue.getInstance();
+        if (l != null) {
+            return q.countBuildableItemsFor(l);
+        }
+        int n = 0;
+        try (ACLContext ctx = ACL.as2(ACL.SYSTEM2)) {
+            for (Queue.BuildableItem i : q.getBuildableItems()) {
+                if (i.getAssignedLabel() == null) {
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Number of configurations allowed to wait, beyond the capacity at hand, for a label that a cloud can provision.
+     * A larger value makes clouds start more nodes at once.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "Can be changed in the runtime by Groovy scripts")
+    public static int PROVISIONING_HEADROOM = Integer.getInteger(SchedulingThrottle.class.getName() + ".provisioningHeadroom", 2);
+
+    /**
+     * How often, in milliseconds, the capacity is looked at again while nothing happens to the configurations
+     * of the build, so that executors freed by other jobs get used.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "Can be changed in the runtime by Groovy scripts")
+    public static long INTERVAL = Long.getLong(SchedulingThrottle.class.getName() + ".interval", 1000);
+}
@@ -23,12 +23,18 @@
  */
 package hudson.tasks.test;
 
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Util;
 import hudson.matrix.Combination;
 import hudson.matrix.MatrixBuild;
 import hudson.matrix.MatrixRun;
 import hudson.model.AbstractBuild;
 import hudson.model.Action;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * {@link Action} that aggregates all the test results from {@link MatrixRun}s.
  *
@@ -39,6 +45,20 @@ import hudson.model.Action;
  */
 public class MatrixTestResult extends AggregatedTestResultAction {
 
+    /**
+     * Compact summary of the test results of each configuration, in the order they were added.
+     * Null in builds recorded before it was introduced.
+     *
+     * <p>
+     * It is persisted with the build, so that the test results of the build can be displayed
+     * without loading the {@link MatrixRun}s, let alone their test results, when they are
+     * {@linkplain #isSummarized() detailed enough}.
+     *
+     * <p>
+     * Replaced rather than modified, so that saving the build while a configuration is added is safe.
+     */
+    private volatile List<Cell> cells;
+
     @Deprecated
     public MatrixTestResult(MatrixBuild owner) {
         super(owner);
@@ -72,6 +92,176 @@ public class MatrixTestResult extends AggregatedTestResultAction {
      */
     @Override
     protected void add(AbstractTestResultAction child) {
+        // only what the child already has at hand, its test results are not loaded for this
+        add(child, Cell.of(this, child, false));
+    }
+
+    /**
+     * Adds a child whose summary was computed beforehand, possibly on another thread.
+     */
+    /*package*/ synchronized void add(AbstractTestResultAction child, Cell cell) {
         super.add(child);
+        List<Cell> updated = cells != null ? new ArrayList<Cell>(cells) : new ArrayList<Cell>();
+        updated.add(cell);
+        cells = updated;
+    }
+
+    /**
+     * Gets the summary of the test results of each configuration.
+     *
+     * @return empty for builds recorded before these summaries were kept.
+     */
+    public List<Cell> getCells() {
+        List<Cell> c = cells;
+        return c != null ? Collections.unmodifiableList(c) : Collections.<Cell>emptyList();
+    }
+
+    /**
+     * Checks if the test results can be displayed from {@link #getCells()} alone, which is the case when
+     * every configuration was summarized with its duration and failed tests.
+     */
+    public boolean isSummarized() {
+        List<Cell> c = cells;
+        if (c == null || c.isEmpty()) return false;
+        for (Cell cell : c) {
+            if (!cell.isDetailed()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Test result counts and duration of one configuration, which do not require loading its run to display.
+     */
+    public static final class Cell {
+        private final String name;
+        private final int build;
+        private final int failCount;
+        private final int skipCount;
+        private final int totalCount;
+        /**
+         * In seconds, or -1 if unknown.
+         */
+        private final float duration;
+        /**
+         * Up to {@link #MAX_FAILED_TESTS} of the failed tests, or null if not {@linkplain #isDetailed() detailed}.
+         */
+        private final List<FailedTest> failedTests;
+
+        Cell(String name, int build, int failCount, int skipCount, int totalCount, float duration, List<FailedTest> failedTests) {
+            this.name = name;
+            this.build = build;
+            this.failCount = failCount;
+            this.skipCount = skipCount;
+            this.totalCount = totalCount;
+            this.duration = duration;
+            this.failedTests = failedTests;
+        }
+
+        /**
+         * Summarizes the given test results.
+         *
+         * @param detailed
+         *      whether to record the duration and the failed tests, which loads the test results.
+         *      Otherwise only the counts, which the child keeps at hand, are recorded.
+         */
+        static Cell of(MatrixTestResult owner, AbstractTestResultAction<?> child, boolean detailed) {
+            float duration = -1;
+            List<FailedTest> failedTests = null;
+            if (detailed) {
+                Object r = child.getResult();
+                if (r instanceof TestResult) duration = ((TestResult) r).getDuration();
+                failedTests = new ArrayList<FailedTest>();
+                if (child.getFailCount() > 0 && MAX_FAILED_TESTS > 0) {
+                    for (TestResult t : child.getFailedTests()) {
+                        if (failedTests.size() >= MAX_FAILED_TESTS) break;
+                        failedTests.add(new FailedTest(t.getFullDisplayName(), owner.getTestResultPath(t)));
+                    }
+                }
+                if (failedTests.isEmpty()) failedTests = Collections.<FailedTest>emptyList();
+            }
+            return new Cell(owner.getChildName(child), child.run.getNumber(), child.getFailCount(), child.getSkipCount(), child.getTotalCount(),
+                    duration, failedTests);
+        }
+
+        /**
+         * Checks if the duration and the failed tests were recorded, besides the counts.
+         */
+        public boolean isDetailed() {
+            return failedTests != null;
+        }
+
+        /**
+         * Name of the configuration, as in {@link Child#name}.
+         */
+        public String getName() {
+            return name;
+        }
+
+        public int getBuild() {
+            return build;
+        }
+
+        public int getFailCount() {
+            return failCount;
+        }
+
+        public int getSkipCount() {
+            return skipCount;
+        }
+
+        public int getTotalCount() {
+            return totalCount;
+        }
+
+        public int getPassCount() {
+            return totalCount - failCount - skipCount;
+        }
+
+        public float getDuration() {
+            return duration;
+        }
+
+        public String getDurationString() {
+            return duration >= 0 ? Util.getTimeSpanString((long) (duration * 1000)) : "";
+        }
+
+        /**
+         * Gets some of the failed tests, see {@link #getFailCount()} for how many failed.
+         */
+        public List<FailedTest> getFailedTests() {
+            return failedTests != null ? Collections.unmodifiableList(failedTests) : Collections.<FailedTest>emptyList();
+        }
     }
+
+    /**
+     * Name of a failed test, and where its result is.
+     */
+    public static final class FailedTest {
+        private final String name;
+        private final String path;
+
+        FailedTest(String name, String path) {
+            this.name = name;
+            this.path = path;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Path of the test result, relative to the {@link MatrixBuild}.
+         *
+         * @see #getTestResultPath(TestResult)
+         */
+        public String getPath() {
+            return path;
+        }
+    }
+
+    /**
+     * Maximum number of failed tests of each configuration recorded in the build, so that it stays small.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "Can be changed in the runtime by Groovy scripts")
+    public static int MAX_FAILED_TESTS = Integer.getInteger(MatrixTestResult.class.getName() + ".maxFailedTests", 10);
 }
@@ -23,23 +23,49 @@
  */
 package hudson.tasks.test;
 
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.Launcher;
 import hudson.matrix.MatrixAggregator;
 import hudson.matrix.MatrixBuild;
 import hudson.matrix.MatrixRun;
 import hudson.model.BuildListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Aggregates {@link AbstractTestResultAction}s of {@link MatrixRun}s
  * into {@link MatrixBuild}.
+ *
+ * <p>
+ * When {@link #PARALLELISM} is positive, the test results of each run are loaded and summarized, with their duration
+ * and failed tests, on a pool of that many threads as the runs complete, rather than by the thread that reports the run.
+ * {@link #endBuild()} waits for what is left, and adds the summaries to the {@link MatrixTestResult} in the order
+ * the runs were reported, from the thread that aggregates. When the pool has too much work queued, the reporting
+ * thread does the work itself, which slows it down to the pace of the pool.
+ * Otherwise, only the counts that each run keeps at hand are aggregated, as they always were.
  * 
  * @author Kohsuke Kawaguchi
  */
 public class TestResultAggregator extends MatrixAggregator {
     private MatrixTestResult result;
 
+    /**
+     * Runs whose summary is being computed on the pool, in the order they were reported.
+     */
+    private final List<AbstractTestResultAction> pendingChildren = new ArrayList<AbstractTestResultAction>();
+    private final List<Future<MatrixTestResult.Cell>> pending = new ArrayList<Future<MatrixTestResult.Cell>>();
+
     public TestResultAggregator(MatrixBuild build, Launcher launcher, BuildListener listener) {
         super(build, launcher, listener);
     }
@@ -58,8 +84,74 @@ public class TestResultAggregator extends MatrixAggregator {
             throw new IOException("The buid has not been started yet.");
         }
         if (atr != null) {
-            result.add(atr);
+            if (PARALLELISM > 0) {
+                final MatrixTestResult r = result;
+                Future<MatrixTestResult.Cell> f = getPool().submit(new Callable<MatrixTestResult.Cell>() {
+                    public MatrixTestResult.Cell call() {
+                        return MatrixTestResult.Cell.of(r, atr, true);
+                    }
+                });
+                synchronized (pending) {
+                    pendingChildren.add(atr);
+                    pending.add(f);
+                }
+            } else {
+                result.add(atr);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean endBuild() throws InterruptedException, IOException {
+        List<AbstractTestResultAction> children;
+        List<Future<MatrixTestResult.Cell>> futures;
+        synchronized (pending) {
+            children = new ArrayList<AbstractTestResultAction>(pendingChildren);
+            futures = new ArrayList<Future<MatrixTestResult.Cell>>(pending);
+            pendingChildren.clear();
+            pending.clear();
         }
+        // add them, and report the first failure, in the order of the runs, regardless of timing
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                result.add(children.get(i), futures.get(i).get());
+            } catch (ExecutionException e) {
+                Throwable t = e.getCause();
+                if (t instanceof RuntimeException) throw (RuntimeException) t;
+                if (t instanceof Error) throw (Error) t;
+                throw new IOException("Failed to aggregate test results", t);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Only waits for its own work, so can end along with the other aggregators.
+     */
+    @Override
+    public boolean isEndBuildConcurrent() {
         return true;
     }
+
+    private static synchronized ExecutorService getPool() {
+        if (pool == null) {
+            ThreadPoolExecutor p = new ThreadPoolExecutor(PARALLELISM, PARALLELISM, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(PARALLELISM * 4),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "TestResultAggregator"),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+            p.allowCoreThreadTimeOut(true);
+            pool = p;
+        }
+        return pool;
+    }
+
+    private static ExecutorService pool;
+
+    /**
+     * Number of threads summarizing test results, shared by all the builds. Zero, the default, summarizes
+     * them on the thread that reports each run, as it always did. Only read when the pool is first used.
+     */
+    @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "Can be changed in the runtime by Groovy scripts")
+    public static int PARALLELISM = Integer.getInteger(TestResultAggregator.class.getName() + ".parallelism", 0);
 }
@@ -16,12 +16,36 @@ f.entry(title:_("Run each configuration sequentially"), field:"runSequentially")
     f.checkbox()
 }
 
+f.entry(title:_("Aggregate results as configurations complete"), field:"aggregateInBackground") {
+    f.checkbox()
+}
+
+f.entry(title:_("Schedule configurations as executors become available (parallel mode only)"), field:"throttleScheduling") {
+    f.checkbox()
+}
+
+f.entry(title:_("Maximum number of configurations running at once (parallel mode only)"), field:"maxConcurrentConfigurations") {
+    f.textbox(default:"0")
+}
+
 f.optionalBlock(field:"hasScheduleDelayBetweenChildBuilds", title:_("Add delay between scheduling each configuration (parallel mode only)"), inline:true) {
     f.entry(title:_("Milliseconds between enqueueing each configuration"), field:"scheduleDelayMillis") {
         f.textbox(default:"0")
     }
 }
 
+f.optionalBlock(field:"hasFailFast", title:_("Abort the remaining configurations once enough of them failed"), inline:true) {
+    f.entry(title:_("Number of failed configurations (0 to ignore)"), field:"failFastCount") {
+        f.textbox(default:"1")
+    }
+    f.entry(title:_("Percentage of failed configurations (0 to ignore)"), field:"failFastPercentage") {
+        f.textbox(default:"0")
+    }
+    f.entry(title:_("Also interrupt the running configurations"), field:"failFastInterruptRunning") {
+        f.checkbox()
+    }
+}
+
 f.optionalBlock (field:"hasTouchStoneCombinationFilter", title:_("Execute touchstone builds first"), inline:true) {
     // TODO: help="/help/matrix/touchstone.html">
     // TODO: move l10n from MatrixProject/configEntries.jelly
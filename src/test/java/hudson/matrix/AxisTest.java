@@ -35,6 +35,7 @@ import org.junit.jupiter.api.Test;
 import org.jvnet.hudson.test.Issue;
 import org.jvnet.hudson.test.JenkinsRule;
 import org.jvnet.hudson.test.JenkinsRule.WebClient;
+import org.jvnet.hudson.test.TestExtension;
 import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
 import org.xml.sax.SAXException;
 
@@ -46,6 +47,8 @@ import java.util.List;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 @WithJenkins
 class AxisTest {
@@ -113,6 +116,39 @@ class AxisTest {
         }
     }
 
+    @Test
+    void buildKeepsSnapshotOfAxes() throws Exception {
+        TextAxis text = new TextAxis("text", "a", "b");
+        p.setAxes(new AxisList(text, new CountingAxis("count")));
+
+        MatrixBuild b1 = j.buildAndAssertSuccess(p);
+        MatrixBuild b2 = j.buildAndAssertSuccess(p);
+
+        // static axes are shared, dynamic ones copied
+        assertSame(text, b1.getAxes().find("text"));
+        assertNotSame(p.getAxes().find("count"), b1.getAxes().find("count"));
+        assertEquals(List.of("1"), b1.getAxes().find("count").getValues());
+        assertEquals(List.of("2"), b2.getAxes().find("count").getValues());
+        assertEquals(2, b1.getRuns().size());
+    }
+
+    public static class CountingAxis extends Axis {
+        public CountingAxis(String name) {
+            super(name, "0");
+        }
+
+        @Override
+        public List<String> rebuild(MatrixBuild.MatrixBuildExecution context) {
+            String next = String.valueOf(Integer.parseInt(values.get(0)) + 1);
+            values.set(0, next);
+            return getValues();
+        }
+
+        @TestExtension("buildKeepsSnapshotOfAxes")
+        public static class DescriptorImpl extends AxisDescriptor {
+        }
+    }
+
     @Test
     @Issue("SECURITY-3289")
     void testHaxorNameFromConfigXml() throws IOException, SAXException {
@@ -31,11 +31,15 @@ import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -69,6 +73,93 @@ class CombinationTest {
         assertTrue(eval(c, "index%2==1") ^ eval(d, "index%2==1"));
     }
 
+    @Test
+    void testEvalReusesScriptWithFreshBinding(JenkinsRule j) {
+        Combination c = new Combination(Map.of("a", "X", "b", "Y"));
+        Combination d = new Combination(Map.of("a", "x", "b", "Y"));
+
+        // the same compiled script is evaluated against each combination
+        for (int i = 0; i < 3; i++) {
+            assertTrue(eval(c, "a=='X' && b=='Y'"));
+            assertFalse(eval(d, "a=='X' && b=='Y'"));
+        }
+    }
+
+    @Test
+    void testCompactRepresentation() {
+        Combination c = new Combination(axes, "X", new String("y"));
+        Combination d = Combination.fromString("b=y,a=X");
+        Combination e = new Combination(axes, "x", "y");
+
+        assertEquals(c, d);
+        assertEquals(c.hashCode(), d.hashCode());
+        assertEquals(new HashMap<>(c), c);
+        assertEquals(new HashMap<>(c).hashCode(), c.hashCode());
+        assertEquals(0, c.compareTo(d));
+        assertTrue(c.compareTo(e) < 0);
+        assertTrue(e.compareTo(c) > 0);
+        assertTrue(new Combination(Map.of("a", "X")).compareTo(c) < 0);
+
+        assertEquals("X", c.get(axes.get(0)));
+        assertEquals("y", c.get(axes.get(1)));
+        assertNull(c.get(new Axis("z", "Z")));
+
+        // the strings are shared between combinations
+        assertSame(c.get("b"), d.get("b"));
+        assertSame(c.get("b"), e.get("b"));
+    }
+
+    @Test
+    void testCachedStrings() {
+        Combination c = new Combination(axes, "X", "y");
+        assertEquals("a=X,b=y", c.toString());
+        assertSame(c.toString(), c.toString());
+        assertSame(c.toString(), c.toString(',', '='));
+        assertEquals("a/X/b/y", c.toString('/', '/'));
+        assertSame(c.digest(), c.digest());
+
+        AxisList list = new AxisList(new Axis("a", "X", "x"), new Axis("b", "Y", "y"));
+        assertEquals("X,y", c.toCompactString(list));
+        assertSame(c.toCompactString(list), c.toCompactString(list));
+
+        // colliding values make the axis names necessary
+        list.add(new Axis("c", "X"));
+        assertEquals("a=X,y", c.toCompactString(list));
+        list.remove(2);
+        assertEquals("X,y", c.toCompactString(list));
+    }
+
+    @Test
+    void testReadOnly() {
+        Combination c = new Combination(axes, "X", "y");
+        String digest = c.digest();
+
+        assertThrows(UnsupportedOperationException.class, () -> c.put("a", "x"));
+        assertThrows(UnsupportedOperationException.class, () -> c.remove("a"));
+        assertThrows(UnsupportedOperationException.class, () -> c.merge("a", "x", (v1, v2) -> v2));
+        assertThrows(UnsupportedOperationException.class, () -> c.replaceAll((k, v) -> v));
+        assertThrows(UnsupportedOperationException.class, c::pollFirstEntry);
+        assertThrows(UnsupportedOperationException.class, c::pollLastEntry);
+        assertThrows(UnsupportedOperationException.class, () -> {
+            Iterator<Map.Entry<String, String>> it = c.entrySet().iterator();
+            it.next();
+            it.remove();
+        });
+        assertThrows(UnsupportedOperationException.class, () -> c.entrySet().iterator().next().setValue("x"));
+        assertThrows(UnsupportedOperationException.class, () -> c.firstEntry().setValue("x"));
+        assertThrows(UnsupportedOperationException.class, () -> c.keySet().remove("a"));
+        assertThrows(UnsupportedOperationException.class, () -> c.values().clear());
+        assertThrows(UnsupportedOperationException.class, () -> c.headMap("b").clear());
+        assertThrows(UnsupportedOperationException.class, () -> c.descendingMap().pollFirstEntry());
+
+        // the cached fields still match the map
+        assertEquals(Map.of("a", "X", "b", "y"), c);
+        assertEquals("X", c.get(axes.get(0)));
+        assertEquals("a=X,b=y", c.toString());
+        assertEquals(digest, c.digest());
+        assertEquals(new HashMap<>(c).hashCode(), c.hashCode());
+    }
+
     @Issue("SECURITY-1339")
     @Test
     void testSandboxConstructors(JenkinsRule j) {
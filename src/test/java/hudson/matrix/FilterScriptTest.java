@@ -0,0 +1,96 @@
+package hudson.matrix;
+
+import groovy.lang.Binding;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.Boolean.TRUE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+@WithJenkins
+class FilterScriptTest {
+
+    private final AxisList axes = new AxisList(
+            new Axis("os", "linux", "windows", "mac"),
+            new Axis("jdk", "8", "11", "17"),
+            new Axis("empty", ""));
+
+    @Test
+    void nativeEvaluationMatchesGroovy(JenkinsRule j) {
+        List<String> expressions = List.of(
+                "os=='linux'",
+                "os == \"linux\" && jdk != '8'",
+                "os=='linux' || os=='mac'",
+                "!(os=='windows')",
+                "!os.contains('in') || jdk=='17'",
+                "os.contains(\"a\")",
+                "index%2==0",
+                "index % 3 != 1 && uniqueId % 2 == 0",
+                "uniqueId==4",
+                "(os=='mac' || jdk=='11') && !(os=='mac' && jdk=='11')",
+                "empty",
+                "!empty",
+                "os",
+                "true",
+                "false || null",
+                "os == null",
+                "PARAM=='value' && os=='linux'",
+                "PARAM.contains('al')",
+                "os=='linux' || undefinedVariable=='x'");
+
+        for (Combination c : axes.list()) {
+            Binding binding = new Binding();
+            binding.setVariable("PARAM", "value");
+            new FilterScript("true").apply(axes, c, binding); // populates the binding
+
+            for (String exp : expressions) {
+                FilterExpression e = FilterExpression.parse(exp);
+                assertNotNull(e, exp);
+                Object r = e.evaluate(binding.getVariables());
+                if (r == FilterExpression.UNSUPPORTED) {
+                    continue;
+                }
+                assertEquals(new FilterScript(exp).evaluateWithGroovy(binding), TRUE.equals(r), exp + " on " + c);
+            }
+        }
+    }
+
+    @Test
+    void unsupportedExpressions() {
+        for (String exp : List.of(
+                "os=~/lin/",
+                "os=='linux';",
+                "os=='linux'\n&& jdk=='8'",
+                "\"${os}\"=='linux'",
+                "os in ['linux', 'mac']",
+                "jdk as int > 8",
+                "os.startsWith('l')",
+                "os==='linux'",
+                "os=='linux'==true",
+                "010==8",
+                "1L==1",
+                "println('x')",
+                "os = 'linux'",
+                "'''linux'''==os",
+                "(os=='linux'")) {
+            assertNull(FilterExpression.parse(exp), exp);
+        }
+    }
+
+    @Test
+    void fallBackOnUnknownVariableOrType() {
+        FilterExpression e = FilterExpression.parse("os=='linux' && undefinedVariable=='x'");
+        assertSame(FilterExpression.UNSUPPORTED, e.evaluate(Map.of("os", "linux")));
+        assertEquals(Boolean.FALSE, e.evaluate(Map.of("os", "mac")));
+
+        assertSame(FilterExpression.UNSUPPORTED, FilterExpression.parse("jdk==8").evaluate(Map.of("jdk", "8")));
+        assertSame(FilterExpression.UNSUPPORTED, FilterExpression.parse("index%0==0").evaluate(Map.of("index", 3L)));
+    }
+}
@@ -29,6 +29,7 @@ import java.util.List;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.empty;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 /**
  * Unit tests for {@link Layouter}, in particular the per-axis
@@ -109,6 +110,45 @@ class LayouterTest {
         assertThat(l.z, empty());
     }
 
+    @Test
+    void filledCellsMatchLookedUpCells() {
+        AxisList axes = new AxisList(
+                axis("a", 2, Axis.Orientation.HORIZONTAL),
+                axis("b", 3, Axis.Orientation.VERTICAL),
+                axis("c", 2, Axis.Orientation.VERTICAL),
+                axis("d", 1, Axis.Orientation.AUTO));
+        Layouter<Combination> lookedUp = layouter(axes);
+        Layouter<Combination> filled = new Layouter<>(axes) {
+            @Override
+            protected Combination getT(Combination c) {
+                throw new AssertionError();
+            }
+
+            @Override
+            protected boolean fill(Cells cells) {
+                for (Combination c : axes.list()) {
+                    cells.set(cells.indexOf(c), c);
+                }
+                assertEquals(-1, cells.indexOf(new Combination(axes, "a0", "b0", "c0", "x")));
+                assertEquals(-1, cells.indexOf(Combination.fromString("a=a0,b=b0,c=c0")));
+                return true;
+            }
+        };
+
+        int cells = 0;
+        for (int y = 0; y < lookedUp.getRows().size(); y++) {
+            for (int x = 0; x < lookedUp.getRows().get(y).size(); x++) {
+                Layouter<Combination>.Column expected = lookedUp.getRows().get(y).get(x);
+                Layouter<Combination>.Column actual = filled.getRows().get(y).get(x);
+                for (int z = 0; z < expected.size(); z++) {
+                    assertEquals(expected.get(z), actual.get(z));
+                    cells++;
+                }
+            }
+        }
+        assertEquals(12, cells);
+    }
+
     private static Layouter<Combination> layouter(AxisList axes) {
         return new Layouter<>(axes) {
             @Override
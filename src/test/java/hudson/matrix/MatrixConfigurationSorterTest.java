@@ -1,11 +1,24 @@
 package hudson.matrix;
 
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.Result;
 import org.junit.jupiter.api.Test;
 import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
 import org.jvnet.hudson.test.TestExtension;
 import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
 import org.kohsuke.stapler.DataBoundConstructor;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertSame;
 
@@ -33,6 +46,61 @@ class MatrixConfigurationSorterTest {
         assertSame(before.getClass(), after.getClass());
     }
 
+    @Test
+    void longestFirst(JenkinsRule j) throws Exception {
+        MatrixProject p = j.createProject(MatrixProject.class);
+        p.setAxes(new AxisList(new TextAxis("duration", "100", "1500", "800")));
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException {
+                String duration = build.getBuildVariables().get("duration");
+                Thread.sleep(build.getNumber() > 1 && duration.equals("100") ? 3000 : Long.parseLong(duration));
+                return true;
+            }
+        });
+        j.buildAndAssertSuccess(p);
+
+        DurationMatrixConfigurationSorter sorter = new DurationMatrixConfigurationSorter();
+        assertEquals(List.of("1500", "800", "100"), sort(sorter, p));
+
+        // the order of a snapshot stays the same as estimates change
+        Comparator<MatrixConfiguration> snapshot = sorter.snapshot(p.getActiveConfigurations());
+        j.buildAndAssertSuccess(p);
+        assertEquals(List.of("100", "1500", "800"), sort(sorter, p));
+        assertEquals(List.of("1500", "800", "100"), sort(snapshot, p));
+    }
+
+    private static List<String> sort(Comparator<MatrixConfiguration> comparator, MatrixProject p) {
+        TreeSet<MatrixConfiguration> sorted = new TreeSet<>(comparator);
+        sorted.addAll(p.getActiveConfigurations());
+        List<String> order = new ArrayList<>();
+        for (MatrixConfiguration c : sorted) {
+            order.add(c.getCombination().get(c.getCombination().keySet().iterator().next()));
+        }
+        return order;
+    }
+
+    @Test
+    void failingFirst(JenkinsRule j) throws Exception {
+        MatrixProject p = j.createProject(MatrixProject.class);
+        p.setAxes(new AxisList(new TextAxis("fail", "no", "yes")));
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
+                return !"yes".equals(build.getBuildVariables().get("fail"));
+            }
+        });
+        j.assertBuildStatus(Result.FAILURE, p.scheduleBuild2(0).get());
+        File stats = new File(p.getRootDir(), "configuration-statistics.xml");
+        await("statistics are saved").until(stats::isFile);
+
+        // read back from the disk
+        p.doReload();
+        FailureRateMatrixConfigurationSorter sorter = new FailureRateMatrixConfigurationSorter();
+        assertEquals(List.of("yes", "no"), sort(sorter, p));
+        assertEquals(List.of("yes", "no"), sort(sorter.snapshot(p.getActiveConfigurations()), p));
+    }
+
     private static DefaultMatrixExecutionStrategyImpl strategy(MatrixProject p) {
         return (DefaultMatrixExecutionStrategyImpl) p.getExecutionStrategy();
     }
@@ -26,6 +26,7 @@ package hudson.matrix;
 import hudson.FilePath;
 import hudson.Functions;
 import hudson.Launcher;
+import hudson.Util;
 import hudson.cli.CLICommandInvoker;
 import hudson.cli.DeleteBuildsCommand;
 import hudson.model.AbstractBuild;
@@ -33,6 +34,7 @@ import hudson.model.BuildListener;
 import hudson.model.Cause;
 import hudson.model.FileParameterDefinition;
 import hudson.model.FileParameterValue;
+import hudson.model.FreeStyleProject;
 import hudson.model.JDK;
 import hudson.model.ParameterDefinition;
 import hudson.model.ParameterValue;
@@ -64,10 +66,12 @@ import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import org.jvnet.hudson.test.Email;
+import org.jvnet.hudson.test.FailureBuilder;
 import org.jvnet.hudson.test.Issue;
 import org.jvnet.hudson.test.JenkinsRule;
 import org.jvnet.hudson.test.SingleFileSCM;
 import org.jvnet.hudson.test.TestBuilder;
+import org.jvnet.hudson.test.TestExtension;
 import org.jvnet.hudson.test.ToolInstallations;
 import org.jvnet.hudson.test.UnstableBuilder;
 import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
@@ -76,6 +80,8 @@ import org.jvnet.hudson.test.recipes.LocalData;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -84,10 +90,15 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static hudson.model.Node.Mode.EXCLUSIVE;
 import static org.awaitility.Awaitility.await;
@@ -95,6 +106,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -348,6 +360,24 @@ class MatrixProjectTest {
         before.setHasScheduleDelayBetweenChildBuilds(true);
         before.setScheduleDelayMillis(150);
         assertExecutionStrategyRoundtrips(p, before);
+
+        before = new DefaultMatrixExecutionStrategyImpl(true, null, null, null);
+        before.setAggregateInBackground(true);
+        assertExecutionStrategyRoundtrips(p, before);
+
+        before = new DefaultMatrixExecutionStrategyImpl(false, null, null, null);
+        before.setThrottleScheduling(true);
+        assertExecutionStrategyRoundtrips(p, before);
+
+        before = new DefaultMatrixExecutionStrategyImpl(false, null, null, null);
+        before.setMaxConcurrentConfigurations(3);
+        assertExecutionStrategyRoundtrips(p, before);
+
+        before = new DefaultMatrixExecutionStrategyImpl(false, null, null, null);
+        before.setFailFastCount(2);
+        before.setFailFastPercentage(50);
+        before.setFailFastInterruptRunning(true);
+        assertExecutionStrategyRoundtrips(p, before);
     }
 
     /** XML save/reload covers strategy databinding without opening the configure page. */
@@ -532,6 +562,574 @@ class MatrixProjectTest {
         assertEquals(4, dirs.size());
     }
 
+    /**
+     * A configuration is reported as soon as it completes, without waiting for the ones that are still running.
+     */
+    @Test
+    void testCompletionOrder() throws Exception {
+        j.jenkins.setNumExecutors(2);
+
+        MatrixProject p = createMatrixProject();
+        p.setAxes(new AxisList(new TextAxis("foo", "1", "2")));
+        final OneShotEvent release = new OneShotEvent();
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException {
+                if ("1".equals(build.getBuildVariables().get("foo"))) {
+                    release.block();
+                }
+                return true;
+            }
+        });
+
+        QueueTaskFuture<MatrixBuild> f = p.scheduleBuild2(0);
+        MatrixBuild b = f.waitForStart();
+        // foo=1 is still running, yet foo=2 is already accounted for
+        await("foo=2 is reported").until(b::getLog, containsString("foo=2 completed with result SUCCESS"));
+        assertFalse(b.getLog().contains("foo=1 completed"));
+
+        release.signal();
+        j.assertBuildStatusSuccess(f.get(60, TimeUnit.SECONDS));
+        j.assertLogContains("foo=1 completed with result SUCCESS", b);
+    }
+
+    @Test
+    void testAbortCancelsAndInterruptsConfigurations() throws Exception {
+        // one configuration can run, the others stay in the queue
+        j.jenkins.setNumExecutors(1);
+
+        MatrixProject p = createMatrixProject();
+        final OneShotEvent started = new OneShotEvent();
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException {
+                started.signal();
+                Thread.sleep(Long.MAX_VALUE);
+                return true;
+            }
+        });
+
+        QueueTaskFuture<MatrixBuild> f = p.scheduleBuild2(0);
+        MatrixBuild b = f.waitForStart();
+        started.block();
+        await("configurations are queued").until(() -> j.jenkins.getQueue().getItems().length == 3);
+
+        b.getExecutor().interrupt();
+        j.assertBuildStatus(Result.ABORTED, f.get(60, TimeUnit.SECONDS));
+        j.waitUntilNoActivity();
+
+        assertEquals(0, j.jenkins.getQueue().getItems().length);
+        j.assertLogContains("Interrupting", b);
+        List<MatrixRun> runs = b.getExactRuns();
+        assertEquals(1, runs.size());
+        j.assertBuildStatus(Result.ABORTED, runs.get(0));
+    }
+
+    @Test
+    void testThrottleScheduling() throws Exception {
+        j.jenkins.setNumExecutors(1);
+
+        MatrixProject p = createMatrixProject();
+        DefaultMatrixExecutionStrategyImpl strategy = new DefaultMatrixExecutionStrategyImpl(false, null, null, null);
+        strategy.setThrottleScheduling(true);
+        p.setExecutionStrategy(strategy);
+        final List<Integer> queueLengths = Collections.synchronizedList(new ArrayList<>());
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException {
+                Thread.sleep(500);
+                queueLengths.add(j.jenkins.getQueue().getItems().length);
+                return true;
+            }
+        });
+
+        MatrixBuild b = j.buildAndAssertSuccess(p);
+        assertEquals(4, b.getExactRuns().size());
+        // with a single executor, only the next configuration waits in the queue
+        for (int n : queueLengths) {
+            assertThat(n, lessThanOrEqualTo(1));
+        }
+    }
+
+    @Test
+    void testThrottleSchedulingIgnoresLabeledItems() throws Exception {
+        j.jenkins.setNumExecutors(2);
+
+        // items waiting for a node that does not exist do not take the unlabeled executors
+        for (int i = 0; i < 2; i++) {
+            FreeStyleProject other = j.createFreeStyleProject();
+            other.setAssignedLabel(j.jenkins.getLabel("nowhere"));
+            other.scheduleBuild2(0);
+        }
+        await().until(() -> j.jenkins.getQueue().getBuildableItems().size() == 2);
+
+        MatrixProject p = createMatrixProject();
+        DefaultMatrixExecutionStrategyImpl strategy = new DefaultMatrixExecutionStrategyImpl(false, null, null, null);
+        strategy.setThrottleScheduling(true);
+        p.setExecutionStrategy(strategy);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(500);
+                running.decrementAndGet();
+                return true;
+            }
+        });
+
+        MatrixBuild b = j.buildAndAssertSuccess(p);
+        assertEquals(4, b.getExactRuns().size());
+        assertEquals(2, maxRunning.get());
+        j.jenkins.getQueue().clear();
+    }
+
+    @Test
+    void testMaxConcurrentConfigurations() throws Exception {
+        j.jenkins.setNumExecutors(4);
+
+        MatrixProject p = createMatrixProject();
+        DefaultMatrixExecutionStrategyImpl strategy = new DefaultMatrixExecutionStrategyImpl(false, null, null, null);
+        strategy.setMaxConcurrentConfigurations(2);
+        p.setExecutionStrategy(strategy);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(500);
+                running.decrementAndGet();
+                return true;
+            }
+        });
+
+        MatrixBuild b = j.buildAndAssertSuccess(p);
+        assertEquals(4, b.getExactRuns().size());
+        assertThat(maxRunning.get(), lessThanOrEqualTo(2));
+    }
+
+    @Test
+    void testFailFast() throws Exception {
+        MatrixProject p = createMatrixProject();
+        // one configuration at a time, so that the others are never scheduled
+        DefaultMatrixExecutionStrategyImpl strategy = new DefaultMatrixExecutionStrategyImpl(true, null, null, null);
+        strategy.setFailFastCount(1);
+        p.setExecutionStrategy(strategy);
+        p.getBuildersList().add(new FailureBuilder());
+
+        MatrixBuild b = j.assertBuildStatus(Result.FAILURE, p.scheduleBuild2(0).get());
+        j.waitUntilNoActivity();
+
+        assertEquals(0, j.jenkins.getQueue().getItems().length);
+        j.assertLogContains("1 configurations failed, so aborting the rest", b);
+        assertEquals(1, b.getExactRuns().size());
+    }
+
+    @Test
+    void testAggregateInBackground() throws Exception {
+        MatrixProject p = createMatrixProject();
+        DefaultMatrixExecutionStrategyImpl strategy = new DefaultMatrixExecutionStrategyImpl(false, null, null, null);
+        strategy.setAggregateInBackground(true);
+        p.setExecutionStrategy(strategy);
+
+        RecordingAggregatable.events.clear();
+        j.buildAndAssertSuccess(p);
+
+        List<String> events = new ArrayList<>(RecordingAggregatable.events);
+        assertEquals(5, events.size(), events.toString());
+        for (String e : events.subList(0, 4)) {
+            assertThat(e, containsString("MatrixAggregationQueue"));
+        }
+        assertEquals("endBuild", events.get(4));
+    }
+
+    @TestExtension("testAggregateInBackground")
+    public static class RecordingAggregatable implements MatrixAggregatable {
+        static final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public MatrixAggregator createAggregator(MatrixBuild build, Launcher launcher, BuildListener listener) {
+            return new MatrixAggregator(build, launcher, listener) {
+                @Override
+                public boolean endRun(MatrixRun run) {
+                    events.add("endRun " + run.getParent().getName() + " on " + Thread.currentThread().getName());
+                    return true;
+                }
+
+                @Override
+                public boolean endBuild() {
+                    events.add("endBuild");
+                    return true;
+                }
+            };
+        }
+    }
+
+    @Test
+    void testAsyncEndRun() throws Exception {
+        assertAsyncEndRunIsBounded(createMatrixProject());
+    }
+
+    @Test
+    void testAsyncEndRunInBackground() throws Exception {
+        MatrixProject p = createMatrixProject();
+        DefaultMatrixExecutionStrategyImpl strategy = new DefaultMatrixExecutionStrategyImpl(false, null, null, null);
+        strategy.setAggregateInBackground(true);
+        p.setExecutionStrategy(strategy);
+        assertAsyncEndRunIsBounded(p);
+    }
+
+    private void assertAsyncEndRunIsBounded(MatrixProject p) throws Exception {
+        AsyncAggregatable.aggregated.set(0);
+        AsyncAggregatable.inFlight.set(0);
+        AsyncAggregatable.peak.set(0);
+        int limit = 1;
+        int max = MatrixAggregationQueue.MAX_OUTSTANDING;
+        MatrixAggregationQueue.MAX_OUTSTANDING = limit;
+        try {
+            j.buildAndAssertSuccess(p);
+        } finally {
+            MatrixAggregationQueue.MAX_OUTSTANDING = max;
+        }
+        assertEquals(4, AsyncAggregatable.aggregated.get());
+        // the one just started, on top of those allowed to be outstanding
+        assertThat(AsyncAggregatable.peak.get(), lessThanOrEqualTo(limit + 1));
+    }
+
+    @TestExtension("testAsyncEndRun")
+    public static class AsyncAggregatable implements MatrixAggregatable {
+        static final AtomicInteger aggregated = new AtomicInteger();
+        static final AtomicInteger inFlight = new AtomicInteger();
+        static final AtomicInteger peak = new AtomicInteger();
+
+        @Override
+        public MatrixAggregator createAggregator(MatrixBuild build, Launcher launcher, BuildListener listener) {
+            return new MatrixAggregator(build, launcher, listener) {
+                @Override
+                public CompletionStage<Boolean> endRunAsync(MatrixRun run) {
+                    peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    return CompletableFuture.supplyAsync(() -> {
+                        try {
+                            Thread.sleep(200);
+                        } catch (InterruptedException e) {
+                            throw new CompletionException(e);
+                        } finally {
+                            inFlight.decrementAndGet();
+                        }
+                        aggregated.incrementAndGet();
+                        return true;
+                    });
+                }
+
+                @Override
+                public boolean endBuild() throws IOException {
+                    // every run is aggregated by now
+                    if (aggregated.get() != 4) {
+                        throw new IOException("Only " + aggregated.get() + " runs aggregated");
+                    }
+                    return true;
+                }
+            };
+        }
+    }
+
+    @TestExtension("testAsyncEndRunInBackground")
+    public static class BackgroundAsyncAggregatable extends AsyncAggregatable {
+    }
+
+    @Test
+    void testConcurrentEndBuild() throws Exception {
+        MatrixProject p = createMatrixProject();
+        ConcurrentAggregatable.bothEnding = new CountDownLatch(2);
+        j.buildAndAssertSuccess(p);
+        assertEquals(0, ConcurrentAggregatable.bothEnding.getCount());
+    }
+
+    @TestExtension("testConcurrentEndBuild")
+    public static class ConcurrentAggregatable implements MatrixAggregatable {
+        static CountDownLatch bothEnding;
+
+        @Override
+        public MatrixAggregator createAggregator(MatrixBuild build, Launcher launcher, BuildListener listener) {
+            return new MatrixAggregator(build, launcher, listener) {
+                @Override
+                public boolean endBuild() throws InterruptedException, IOException {
+                    // only returns if the other aggregator is ending at the same time
+                    bothEnding.countDown();
+                    if (!bothEnding.await(30, TimeUnit.SECONDS)) {
+                        throw new IOException("Aggregators did not end concurrently");
+                    }
+                    return true;
+                }
+
+                @Override
+                public boolean isEndBuildConcurrent() {
+                    return true;
+                }
+            };
+        }
+    }
+
+    @TestExtension("testConcurrentEndBuild")
+    public static class OtherConcurrentAggregatable extends ConcurrentAggregatable {
+    }
+
+    @Test
+    void testConcurrentEndBuildFailures() throws Exception {
+        MatrixProject p = createMatrixProject();
+        FailingAggregatable.created = Collections.synchronizedList(new ArrayList<>());
+        FailingAggregatable.secondFailed = new CountDownLatch(1);
+        MatrixBuild b = j.assertBuildStatus(Result.FAILURE, p.scheduleBuild2(0).get());
+
+        // reported in the order of the aggregators, although the second one failed first
+        String log = b.getLog();
+        int first = log.indexOf("aggregator-0 broke");
+        int second = log.indexOf("aggregator-1 broke");
+        assertTrue(first >= 0, log);
+        assertTrue(second > first, log);
+        j.assertLogContains("failed to aggregate the results", b);
+    }
+
+    @TestExtension("testConcurrentEndBuildFailures")
+    public static class FailingAggregatable implements MatrixAggregatable {
+        static List<String> created;
+        static CountDownLatch secondFailed;
+
+        @Override
+        public MatrixAggregator createAggregator(MatrixBuild build, Launcher launcher, BuildListener listener) {
+            final String name = "aggregator-" + created.size();
+            created.add(name);
+            final boolean isFirst = created.size() == 1;
+            return new MatrixAggregator(build, launcher, listener) {
+                @Override
+                public boolean endBuild() throws InterruptedException, IOException {
+                    if (isFirst) {
+                        secondFailed.await(30, TimeUnit.SECONDS);
+                    } else {
+                        secondFailed.countDown();
+                    }
+                    throw new IOException(name + " broke");
+                }
+
+                @Override
+                public boolean isEndBuildConcurrent() {
+                    return true;
+                }
+            };
+        }
+    }
+
+    @TestExtension("testConcurrentEndBuildFailures")
+    public static class OtherFailingAggregatable extends FailingAggregatable {
+    }
+
+    @Test
+    void testLazyLoadInactiveConfigurations() throws Exception {
+        MatrixProject p = createMatrixProject();
+        j.buildAndAssertSuccess(p);
+        // drop the "direction" axis, so that the configurations of the first build become inactive
+        p.setAxes(new AxisList(new TextAxis("db", "mysql", "oracle")));
+        j.buildAndAssertSuccess(p);
+
+        boolean lazy = MatrixProject.LAZY_LOAD_INACTIVE_CONFIGURATIONS;
+        MatrixProject.LAZY_LOAD_INACTIVE_CONFIGURATIONS = true;
+        try {
+            j.jenkins.reload();
+            p = j.jenkins.getItemByFullName(p.getFullName(), MatrixProject.class);
+            assertEquals(2, p.getActiveConfigurations().size());
+
+            MatrixConfiguration inactive = p.getItem("db=mysql,direction=north");
+            assertNotNull(inactive);
+            assertFalse(inactive.isActiveConfiguration());
+            assertEquals(1, inactive.getBuilds().size());
+            assertEquals(6, p.getItems().size());
+        } finally {
+            MatrixProject.LAZY_LOAD_INACTIVE_CONFIGURATIONS = lazy;
+        }
+    }
+
+    @Test
+    void testPartialBuild() throws Exception {
+        MatrixProject p = createMatrixProject();
+        p.setTouchStoneCombinationFilter("db==\"mysql\"");
+        p.setTouchStoneResultCondition(Result.SUCCESS);
+        MatrixBuild b1 = j.buildAndAssertSuccess(p);
+        assertFalse(b1.isPartial());
+
+        // the touchstones fail, so the other configurations are inherited from the first build
+        p.getBuildersList().add(new UnstableBuilder());
+        MatrixBuild b2 = j.assertBuildStatus(Result.UNSTABLE, p.scheduleBuild2(0).get());
+        assertTrue(b2.isPartial());
+        assertTrue(b1.isLinkedBy(b2));
+        assertFalse(b2.isLinkedBy(b1));
+
+        j.jenkins.reload();
+        p = j.jenkins.getItemByFullName(p.getFullName(), MatrixProject.class);
+        b1 = p.getBuildByNumber(1);
+        b2 = p.getBuildByNumber(2);
+        assertFalse(b1.isPartial());
+        assertTrue(b2.isPartial());
+        assertTrue(b1.isLinkedBy(b2));
+    }
+
+    @Test
+    void testRunIndex() throws Exception {
+        MatrixProject p = createMatrixProject();
+        j.buildAndAssertSuccess(p);
+        p.setCombinationFilter("db=='mysql'");
+        MatrixBuild b2 = j.buildAndAssertSuccess(p);
+
+        assertEquals(2, b2.getExactRuns().size());
+        // the others are inherited from the first build
+        assertEquals(4, b2.getRuns().size());
+        String xml = Files.readString(new File(b2.getRootDir(), "build.xml").toPath(), StandardCharsets.UTF_8);
+        assertThat(xml, containsString("runIndex"));
+
+        j.jenkins.reload();
+        p = j.jenkins.getItemByFullName(p.getFullName(), MatrixProject.class);
+        b2 = p.getBuildByNumber(2);
+        Combination inherited = Combination.fromString("db=oracle,direction=north");
+        assertEquals(1, b2.getRun(inherited).getNumber());
+        assertEquals(2, b2.getRun(Combination.fromString("db=mysql,direction=north")).getNumber());
+        assertEquals(2, b2.getExactRuns().size());
+        assertEquals(4, b2.getRuns().size());
+
+        // runs removed since are no longer reported
+        p.getItem(inherited).getBuildByNumber(1).delete();
+        assertNull(b2.getRun(inherited));
+        assertEquals(3, b2.getRuns().size());
+    }
+
+    @Test
+    void testRunIndexWaitsForRunningBaseBuild() throws Exception {
+        j.jenkins.setNumExecutors(4);
+
+        MatrixProject p = createMatrixProject();
+        p.setConcurrentBuild(true);
+        p.setTouchStoneCombinationFilter("db==\"mysql\"");
+        p.setTouchStoneResultCondition(Result.SUCCESS);
+        final OneShotEvent blocked = new OneShotEvent();
+        final OneShotEvent release = new OneShotEvent();
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException {
+                Map<String,String> v = build.getBuildVariables();
+                if (build.getNumber() == 2 && "oracle".equals(v.get("db")) && "north".equals(v.get("direction"))) {
+                    blocked.signal();
+                    release.block();
+                }
+                if (build.getNumber() == 3) {
+                    build.setResult(Result.UNSTABLE);
+                }
+                return true;
+            }
+        });
+        j.buildAndAssertSuccess(p);
+
+        // the second build stays running with one configuration
+        QueueTaskFuture<MatrixBuild> f2 = p.scheduleBuild2(0);
+        blocked.block();
+        // while a third build, whose touchstones fail, completes on top of it
+        MatrixBuild b3 = j.assertBuildStatus(Result.UNSTABLE, p.scheduleBuild2(0).get());
+        assertEquals(3, b3.getNumber());
+        assertNull(b3.getExactRun(Combination.fromString("db=oracle,direction=north")));
+
+        release.signal();
+        j.assertBuildStatusSuccess(f2);
+
+        Combination inherited = Combination.fromString("db=oracle,direction=north");
+        assertEquals(2, b3.getRun(inherited).getNumber());
+        assertTrue(b3.isPartial());
+        assertTrue(f2.get().isLinkedBy(b3));
+
+        j.jenkins.reload();
+        p = j.jenkins.getItemByFullName(p.getFullName(), MatrixProject.class);
+        b3 = p.getBuildByNumber(3);
+        assertEquals(2, b3.getRun(inherited).getNumber());
+        assertEquals(4, b3.getRuns().size());
+        for (MatrixRun r : b3.getRuns()) {
+            assertEquals(r.getParent().getCombination().get("db").equals("mysql") ? 3 : 2, r.getNumber(), r.toString());
+        }
+    }
+
+    @Test
+    void testRebuildConfigurationsIsIncremental() throws Exception {
+        MatrixProject p = createMatrixProject();
+        Set<MatrixConfiguration> active = p.rebuildConfigurations(null);
+        assertEquals(4, active.size());
+        assertSame(active, p.rebuildConfigurations(null));
+
+        p.setCombinationFilter("db=='mysql'");
+        Set<MatrixConfiguration> filtered = p.rebuildConfigurations(null);
+        assertEquals(2, filtered.size());
+        for (MatrixConfiguration c : filtered) {
+            assertSame(c, p.getItem(c.getCombination()));
+            assertTrue(active.contains(c));
+        }
+        assertSame(filtered, p.rebuildConfigurations(null));
+        assertEquals(4, p.getItems().size());
+    }
+
+    @Test
+    void testConfigurationsIndex() throws Exception {
+        MatrixProject p = createMatrixProject();
+        j.buildAndAssertSuccess(p);
+
+        File index = new File(p.getRootDir(), "configurations.index");
+        assertTrue(index.isFile());
+        List<String> configs = new ArrayList<>();
+        for (String line : Files.readAllLines(index.toPath(), StandardCharsets.UTF_8)) {
+            if (line.startsWith("C ")) configs.add(line.substring(2));
+        }
+        assertEquals(4, configs.size());
+        assertTrue(configs.contains("axis-db/mysql/axis-direction/north"), configs.toString());
+
+        j.jenkins.reload();
+        p = j.jenkins.getItemByFullName(p.getFullName(), MatrixProject.class);
+        assertEquals(4, p.getItems().size());
+
+        // a broken index is ignored, and rewritten from what is on the disk
+        Files.write(index.toPath(), "garbage".getBytes(StandardCharsets.UTF_8));
+        j.jenkins.reload();
+        p = j.jenkins.getItemByFullName(p.getFullName(), MatrixProject.class);
+        assertEquals(4, p.getItems().size());
+        assertEquals(1, p.getItem("db=mysql,direction=north").getBuilds().size());
+        assertFalse(new String(Files.readAllBytes(index.toPath()), StandardCharsets.UTF_8).contains("garbage"));
+    }
+
+    @Test
+    void testConfigurationsIndexNoticesLeafChanges() throws Exception {
+        MatrixProject p = createMatrixProject();
+        j.buildAndAssertSuccess(p);
+        File index = new File(p.getRootDir(), "configurations.index");
+        assertTrue(index.isFile());
+
+        // a configuration of an older, longer axis list, under an existing one
+        File leaf = p.getItem("db=mysql,direction=north").getRootDir();
+        File nested = new File(leaf, "axis-extra/x");
+        assertTrue(nested.mkdirs());
+        Files.copy(new File(leaf, "config.xml").toPath(), new File(nested, "config.xml").toPath());
+
+        j.jenkins.reload();
+        p = j.jenkins.getItemByFullName(p.getFullName(), MatrixProject.class);
+        assertEquals(5, p.getItems().size());
+        assertNotNull(p.getItem("db=mysql,direction=north,extra=x"));
+        String xml = new String(Files.readAllBytes(index.toPath()), StandardCharsets.UTF_8);
+        assertThat(xml, containsString("C axis-db/mysql/axis-direction/north/axis-extra/x\n"));
+
+        // and its config.xml removed again
+        Files.delete(new File(nested, "config.xml").toPath());
+
+        j.jenkins.reload();
+        p = j.jenkins.getItemByFullName(p.getFullName(), MatrixProject.class);
+        assertEquals(4, p.getItems().size());
+        assertNull(p.getItem("db=mysql,direction=north,extra=x"));
+        xml = new String(Files.readAllBytes(index.toPath()), StandardCharsets.UTF_8);
+        assertFalse(xml.contains("axis-extra"), xml);
+    }
+
     /**
      * Test that Actions are passed to configurations
      */
@@ -729,6 +1327,70 @@ class MatrixProjectTest {
         await().until(last::getArtifacts, hasSize(1));
     }
 
+    @Test
+    void logRotateDeletesOrphanedRuns() throws Exception {
+        MatrixProject p = j.jenkins.createProject(MatrixProject.class, "orphans");
+        p.setAxes(new AxisList(new TextAxis("AXIS", "A", "B")));
+
+        j.buildAndAssertSuccess(p);
+        j.buildAndAssertSuccess(p);
+
+        // parent build goes away without its runs
+        Util.deleteRecursive(p.getBuildByNumber(1).getRootDir());
+        j.jenkins.reload();
+        p = j.jenkins.getItemByFullName("orphans", MatrixProject.class);
+        // B becomes inactive
+        p.setAxes(new AxisList(new TextAxis("AXIS", "A")));
+
+        p.logRotate();
+
+        for (String name : Arrays.asList("AXIS=A", "AXIS=B")) {
+            MatrixConfiguration c = p.getItem(name);
+            assertNotNull(c, name);
+            assertNull(c.getBuildByNumber(1), name);
+            assertNotNull(c.getBuildByNumber(2), name);
+        }
+    }
+
+    @Test
+    void logRotateKeepsRunsOfBuildsStartedMeanwhile() throws Exception {
+        MatrixProject p = j.jenkins.createProject(MatrixProject.class, "started");
+        p.setAxes(new AxisList(new TextAxis("AXIS", "A")));
+        p.setConcurrentBuild(true);
+        final OneShotEvent started = new OneShotEvent();
+        final OneShotEvent release = new OneShotEvent();
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException {
+                if (build.getNumber() == 2) {
+                    started.signal();
+                    release.block();
+                }
+                return true;
+            }
+        });
+        j.buildAndAssertSuccess(p);
+        MatrixConfiguration c = p.getItem("AXIS=A");
+
+        // the parent builds are listed, then a build starts before the configurations are rotated
+        SortedSet<Integer> builds = LinkedLogRotator.getBuildNumbers(p);
+        QueueTaskFuture<MatrixBuild> f = p.scheduleBuild2(0);
+        started.block();
+
+        LinkedLogRotator.deleteOrphanedRuns(c, builds);
+        assertNotNull(c.getBuildByNumber(2));
+
+        release.signal();
+        j.assertBuildStatusSuccess(f);
+        LinkedLogRotator.deleteOrphanedRuns(c, builds);
+        assertNotNull(c.getBuildByNumber(1));
+        assertNotNull(c.getBuildByNumber(2));
+
+        // and once listed again, it is known
+        p.logRotate();
+        assertNotNull(c.getBuildByNumber(2));
+    }
+
     @Test
     @Issue("JENKINS-13554")
     void deleteBuildWithChildrenOverCLI() throws Exception {
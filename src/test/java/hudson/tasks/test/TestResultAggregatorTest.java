@@ -0,0 +1,122 @@
+package hudson.tasks.test;
+
+import hudson.Launcher;
+import hudson.matrix.AxisList;
+import hudson.matrix.MatrixBuild;
+import hudson.matrix.MatrixProject;
+import hudson.matrix.TextAxis;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.Result;
+import hudson.tasks.junit.JUnitResultArchiver;
+import org.junit.jupiter.api.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+import org.jvnet.hudson.test.junit.jupiter.WithJenkins;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@WithJenkins
+class TestResultAggregatorTest {
+
+    @Test
+    void parallelAggregation(JenkinsRule j) throws Exception {
+        int parallelism = TestResultAggregator.PARALLELISM;
+        TestResultAggregator.PARALLELISM = 2;
+        try {
+            MatrixBuild b = j.assertBuildStatus(Result.UNSTABLE, createProject(j).scheduleBuild2(0).get());
+
+            MatrixTestResult r = b.getAction(MatrixTestResult.class);
+            assertEquals(9, r.getTotalCount());
+            assertEquals(3, r.getFailCount());
+            assertEquals(3, r.children.size());
+
+            List<MatrixTestResult.Cell> cells = r.getCells();
+            assertEquals(3, cells.size());
+            for (MatrixTestResult.Cell c : cells) {
+                assertEquals(3, c.getTotalCount());
+                assertEquals(1, c.getFailCount());
+                assertEquals(2, c.getPassCount());
+                assertEquals(b.getNumber(), c.getBuild());
+                assertTrue(c.isDetailed());
+            }
+            assertTrue(r.isSummarized());
+        } finally {
+            TestResultAggregator.PARALLELISM = parallelism;
+        }
+    }
+
+    @Test
+    void summaryIsPersisted(JenkinsRule j) throws Exception {
+        int parallelism = TestResultAggregator.PARALLELISM;
+        TestResultAggregator.PARALLELISM = 2;
+        try {
+            MatrixBuild b = j.assertBuildStatus(Result.UNSTABLE, createProject(j).scheduleBuild2(0).get());
+            b.reload();
+
+            MatrixTestResult r = b.getAction(MatrixTestResult.class);
+            assertTrue(r.isSummarized());
+            List<MatrixTestResult.Cell> cells = r.getCells();
+            assertEquals(3, cells.size());
+            for (MatrixTestResult.Cell c : cells) {
+                assertEquals(1, c.getFailedTests().size());
+                MatrixTestResult.FailedTest f = c.getFailedTests().get(0);
+                assertEquals("Suite.fails", f.getName());
+                assertThat(f.getPath(), containsString("/testReport/"));
+            }
+
+            String page = j.createWebClient().getPage(b, "testReport").asNormalizedText();
+            assertThat(page, containsString("os=linux"));
+            assertThat(page, containsString("Suite.fails"));
+        } finally {
+            TestResultAggregator.PARALLELISM = parallelism;
+        }
+    }
+
+    @Test
+    void serialAggregationOnlyKeepsCounts(JenkinsRule j) throws Exception {
+        MatrixBuild b = j.assertBuildStatus(Result.UNSTABLE, createProject(j).scheduleBuild2(0).get());
+
+        MatrixTestResult r = b.getAction(MatrixTestResult.class);
+        assertEquals(9, r.getTotalCount());
+        assertFalse(r.isSummarized());
+        List<MatrixTestResult.Cell> cells = r.getCells();
+        assertEquals(3, cells.size());
+        for (MatrixTestResult.Cell c : cells) {
+            assertFalse(c.isDetailed());
+            assertEquals(1, c.getFailCount());
+            assertEquals(-1, c.getDuration());
+            assertTrue(c.getFailedTests().isEmpty());
+        }
+
+        // displayed from the test results of the runs, as before
+        String page = j.createWebClient().getPage(b, "testReport").asNormalizedText();
+        assertThat(page, containsString("Suite.fails"));
+    }
+
+    static MatrixProject createProject(JenkinsRule j) throws IOException {
+        MatrixProject p = j.createProject(MatrixProject.class);
+        p.setAxes(new AxisList(new TextAxis("os", "linux", "mac", "windows")));
+        p.getBuildersList().add(new TestBuilder() {
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws InterruptedException, IOException {
+                build.getWorkspace().child("TEST-results.xml").write(
+                        "<testsuite name='suite' tests='3' failures='1'>"
+                        + "<testcase classname='Suite' name='passes' time='1'/>"
+                        + "<testcase classname='Suite' name='alsoPasses' time='1'/>"
+                        + "<testcase classname='Suite' name='fails' time='1'><failure message='broken'/></testcase>"
+                        + "</testsuite>", "UTF-8");
+                return true;
+            }
+        });
+        p.getPublishersList().add(new JUnitResultArchiver("TEST-*.xml"));
+        return p;
+    }
+}